@@ -26,6 +26,7 @@ package net.fabricmc.loom;
 
 import com.google.common.collect.ImmutableMap;
 import groovy.util.Node;
+import net.fabricmc.loom.providers.MappingsCache;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.task.RemapJarTask;
@@ -41,6 +42,7 @@ import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
 import org.gradle.api.artifacts.result.DependencyResult;
 import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.publish.Publication;
@@ -62,6 +64,8 @@ import java.util.Set;
 import java.util.function.Predicate;
 
 public class AbstractPlugin implements Plugin<Project> {
+	/** Marks (on the root project) that the caches shared by the whole build have been set up already */
+	private static final String BUILD_CACHES_SET_UP = "loomBuildCachesSetUp";
 	protected Project project;
 
 	public static boolean isRootProject(Project project) {
@@ -289,6 +293,42 @@ public class AbstractPlugin implements Plugin<Project> {
 			project1.getRepositories().mavenCentral();
 			project1.getRepositories().jcenter();
 
+			if (MirrorUtil.getBase(project1) != null) {
+				//Mojang's libraries come from the mirror too, which might well only have the jars
+				String mirroredLibraries = MirrorUtil.getMirrored(project1, Constants.LIBRARIES_BASE);
+
+				project1.getRepositories().withType(MavenArtifactRepository.class, repo -> {
+					if (Constants.LIBRARIES_BASE.equals(repo.getUrl().toString())) {
+						repo.setUrl(mirroredLibraries);
+						repo.metadataSources(sources -> {
+							sources.mavenPom();
+							sources.artifact();
+						});
+					}
+				});
+			}
+
+			//The caches are shared by every project in the build, so are only set up by the first project using Loom
+			ExtraPropertiesExtension buildState = project1.getRootProject().getExtensions().getExtraProperties();
+			if (!buildState.has(BUILD_CACHES_SET_UP)) {
+				buildState.set(BUILD_CACHES_SET_UP, true);
+
+				FileHashCache.INSTANCE.load(new File(extension.getUserCache(), "file-hashes.txt"), project1.getLogger());
+				MappingsCache.INSTANCE.setMaxWeight(extension.mappingsCacheSize * 1024L * 1024L);
+				project1.getGradle().buildFinished(result -> {
+					project1.getLogger().info("Mappings cache: " + MappingsCache.INSTANCE.getStats());
+
+					int pruned = extension.getDerivedArtifactStore().prune();
+					if (pruned > 0) project1.getLogger().info("Removed " + pruned + " unused derived files from the user cache");
+
+					try {
+						FileHashCache.INSTANCE.save();
+					} catch (IOException e) {
+						project1.getLogger().warn("Error saving file hash cache", e);
+					}
+				});
+			}
+
 			LoomDependencyManager dependencyManager = new LoomDependencyManager();
 			extension.setDependencyManager(dependencyManager);
 
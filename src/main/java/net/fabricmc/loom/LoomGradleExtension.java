@@ -28,6 +28,7 @@ import com.google.gson.JsonObject;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
+import net.fabricmc.loom.util.DerivedArtifactStore;
 import net.fabricmc.loom.util.LoomDependencyManager;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.mercury.Mercury;
@@ -55,6 +56,15 @@ public class LoomGradleExtension {
 	public boolean autoGenIDERuns = true;
 	public boolean extractJars = false;
 	public String customManifest = null;
+	public long versionManifestTTL = 60 * 60; //Seconds to trust the version manifests for before asking if they've changed
+	public int downloadThreads = 5;
+	public int downloadsPerHost = 5; //The JDK keeps at most 5 idle connections per host alive by default
+	public int downloadAttempts = 3;
+	public boolean linkRunDirAssets = true;
+	public String mirror = null; //Directory or URL to get Mojang's files from instead, see MirrorUtil
+	public int mappingsCacheSize = 256; //Megabytes of mappings the daemon keeps loaded between builds, taken from the first project using Loom
+	public String sharedCache = null; //Read-only directory of derived jars shared between users, see DerivedArtifactStore
+	public int remapThreads = Runtime.getRuntime().availableProcessors(); //Mod remappers run at once whilst resolving modCompile
 
 	public String tweakClass = "";
 
@@ -107,6 +117,10 @@ public class LoomGradleExtension {
 		return userCache;
 	}
 
+	public DerivedArtifactStore getDerivedArtifactStore() {
+		return new DerivedArtifactStore(new File(getUserCache(), "derived"), sharedCache != null ? project.file(sharedCache) : null);
+	}
+
 	public File getRootProjectPersistentCache() {
 		File projectCache = new File(project.getRootProject().file(".gradle"), "loom-cache");
 		if(!projectCache.exists()){
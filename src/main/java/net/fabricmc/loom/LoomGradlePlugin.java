@@ -66,6 +66,10 @@ public class LoomGradlePlugin extends AbstractPlugin {
 
 		tasks.register("remapJar", RemapJarTask.class);
 
+		tasks.register("populateMirror", PopulateMirrorTask.class, t -> {
+			t.getOutputs().upToDateWhen((o) -> false);
+		});
+
 		tasks.register("genSourcesDecompile", FernFlowerTask.class, t -> {
 			t.getOutputs().upToDateWhen((o) -> false);
 		});
@@ -24,41 +24,211 @@
 
 package net.fabricmc.loom.providers;
 
-import net.fabricmc.loom.util.StaticPathWatcher;
-import net.fabricmc.mappings.Mappings;
-import org.gradle.api.logging.Logging;
+import net.fabricmc.loom.util.FileHashCache;
+import net.fabricmc.loom.util.mappings.TinyMappings;
+import net.fabricmc.loom.util.mappings.TinyMappingsCompiler;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.SoftReference;
-import java.nio.file.*;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps loaded mappings around for the life of the Gradle daemon, so every project and every build using the same
+ * mappings shares the one copy.
+ *
+ * <p>Mappings are dropped least recently used first once the total {@link TinyMappings#getWeight() weight} of everything
+ * cached (including what has been derived from it, such as remapping tables) goes over {@link #setMaxWeight(long) the
+ * budget}, although the most recently used mappings are always kept.
+ * Only one thread will load a given file at a time, any others asking for it at the same time wait for it to finish.
+ *
+ * <p>Safe to use from multiple threads at once.
+ */
 public final class MappingsCache {
     public static final MappingsCache INSTANCE = new MappingsCache();
 
-    private final Map<Path, SoftReference<Mappings>> mappingsCache = new HashMap<>();
+    private final Map<Path, TinyMappings> mappingsCache = new LinkedHashMap<>(16, 0.75F, true); //Guarded by this
+    private final ConcurrentMap<Path, CompletableFuture<TinyMappings>> loading = new ConcurrentHashMap<>();
+    private long maxWeight = 256L * 1024 * 1024;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+    private MappingsCache() {
+    }
+
+    /**
+     * Set the most the weights of all the cached mappings can add up to, evicting any which no longer fit
+     *
+     * @param maxWeight The budget in bytes
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Get the mappings in the given Tiny file, loading them if they're not cached or the file has changed since they were
+     *
+     * @param mappingsPath The Tiny mappings file
+     *
+     * @return The mappings in the file
+     *
+     * @throws IOException If an exception occurs hashing the file or loading the mappings
+     */
+    public TinyMappings get(Path mappingsPath) throws IOException {
+        Path path = mappingsPath.toAbsolutePath();
+        byte[] hash = FileHashCache.INSTANCE.sha1(path.toFile());
+
+        TinyMappings mappings = getCached(path, hash);
+        if (mappings != null) {
+            hits.incrementAndGet();
+            return mappings;
+        }
 
-    public Mappings get(Path mappingsPath) {
-        mappingsPath = mappingsPath.toAbsolutePath();
-        if (StaticPathWatcher.INSTANCE.hasFileChanged(mappingsPath)) {
-            mappingsCache.remove(mappingsPath);
+        CompletableFuture<TinyMappings> future = new CompletableFuture<>();
+        CompletableFuture<TinyMappings> existing = loading.putIfAbsent(path, future);
+        if (existing != null) {
+            //Someone else is already loading it, no sense doing it twice
+            hits.incrementAndGet();
+            return await(existing);
         }
 
-        SoftReference<Mappings> ref = mappingsCache.get(mappingsPath);
-        if (ref != null && ref.get() != null) {
-            return ref.get();
-        } else {
-            try (InputStream stream = Files.newInputStream(mappingsPath)) {
-                Mappings mappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(stream, false);
-                ref = new SoftReference<>(mappings);
-                mappingsCache.put(mappingsPath, ref);
-                return mappings;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        try {
+            //It might have finished loading between looking in the cache and starting to load it
+            mappings = getCached(path, hash);
+
+            if (mappings == null) {
+                misses.incrementAndGet();
+                mappings = TinyMappingsCompiler.load(path, getBinaryPath(path));
+                put(path, mappings);
+            } else {
+                hits.incrementAndGet();
             }
+
+            future.complete(mappings);
+            return mappings;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(path, future);
         }
     }
+
+    /**
+     * Hash only the names in the given namespaces of the given Tiny file, the same as {@link TinyMappings#hashNamespaces(String...)}.
+     * If the mappings aren't already cached, and their binary form is up to date, only the header of it is read.
+     *
+     * @param mappingsPath The Tiny mappings file
+     * @param namespaces The namespaces to include
+     *
+     * @return The SHA-1 of every class, field and method in the given namespaces
+     *
+     * @throws IOException If an exception occurs hashing the file or loading the mappings
+     */
+    public byte[] hashNamespaces(Path mappingsPath, String... namespaces) throws IOException {
+        Path path = mappingsPath.toAbsolutePath();
+        byte[] hash = FileHashCache.INSTANCE.sha1(path.toFile());
+
+        TinyMappings mappings = getCached(path, hash);
+        if (mappings == null) {
+            byte[] namespaceHash = TinyMappings.hashNamespaces(getBinaryPath(path), hash, namespaces);
+            if (namespaceHash != null) return namespaceHash;
+
+            //The binary form needs compiling (again), so they might as well be kept around for whatever needs them next
+            mappings = get(path);
+        }
+
+        return mappings.hashNamespaces(namespaces);
+    }
+
+    private synchronized TinyMappings getCached(Path path, byte[] hash) {
+        TinyMappings mappings = mappingsCache.get(path);
+
+        if (mappings != null && !Arrays.equals(hash, mappings.getSourceHash())) {
+            //The file has changed since it was loaded
+            mappingsCache.remove(path);
+            return null;
+        }
+
+        return mappings;
+    }
+
+    private synchronized void put(Path path, TinyMappings mappings) {
+        mappingsCache.put(path, mappings);
+        evict();
+    }
+
+    /**
+     * Check the cache is still within budget after something has been {@link TinyMappings#getDerived derived} from
+     * any of the cached mappings, which makes them heavier
+     */
+    public synchronized void reweigh() {
+        evict();
+    }
+
+    private long getWeight() {
+        assert Thread.holdsLock(this);
+
+        //Mappings get heavier as things are derived from them, so the total is worked out afresh each time
+        long weight = 0;
+        for (TinyMappings mappings : mappingsCache.values()) {
+            weight += mappings.getWeight();
+        }
+        return weight;
+    }
+
+    private void evict() {
+        assert Thread.holdsLock(this);
+
+        long weight = getWeight();
+        for (Iterator<TinyMappings> it = mappingsCache.values().iterator(); weight > maxWeight && mappingsCache.size() > 1; ) {
+            weight -= it.next().getWeight();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static TinyMappings await(CompletableFuture<TinyMappings> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) throw new IOException(cause.getMessage(), cause);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * @return A summary of how well the cache has been doing, for logging
+     */
+    public String getStats() {
+        int size;
+        long weight;
+        synchronized (this) {
+            size = mappingsCache.size();
+            weight = getWeight();
+        }
+
+        long hits = this.hits.get(), misses = this.misses.get();
+        long total = hits + misses;
+        return String.format("%d hits, %d misses (%.0f%% hit rate), %d evictions, %d mappings cached using %d KB",
+                hits, misses, total > 0 ? hits * 100D / total : 0D, evictions.get(), size, weight / 1024);
+    }
+
+    /**
+     * Get where the binary form of the given Tiny mappings is kept
+     */
+    public static Path getBinaryPath(Path mappingsPath) {
+        return mappingsPath.resolveSibling(mappingsPath.getFileName() + ".bin");
+    }
 }
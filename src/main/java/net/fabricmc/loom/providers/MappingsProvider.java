@@ -25,10 +25,12 @@
 package net.fabricmc.loom.providers;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.CacheLock;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DependencyProvider;
+import net.fabricmc.loom.util.DerivedArtifactStore;
 import net.fabricmc.loom.util.Version;
-import net.fabricmc.mappings.Mappings;
+import net.fabricmc.loom.util.mappings.TinyMappings;
 import net.fabricmc.stitch.commands.CommandProposeFieldNames;
 import org.gradle.api.Project;
 
@@ -56,10 +58,19 @@ public class MappingsProvider extends DependencyProvider {
 	public File MAPPINGS_TINY;
 	public File MAPPINGS_MIXIN_EXPORT;
 
-	public Mappings getMappings() throws IOException {
+	public TinyMappings getMappings() throws IOException {
 		return MappingsCache.INSTANCE.get(MAPPINGS_TINY.toPath());
 	}
 
+	/**
+	 * Hash only the names in the given namespaces of the mappings, without loading them if possible
+	 *
+	 * @see MappingsCache#hashNamespaces(Path, String...)
+	 */
+	public byte[] hashNamespaces(String... namespaces) throws IOException {
+		return MappingsCache.INSTANCE.hashNamespaces(MAPPINGS_TINY.toPath(), namespaces);
+	}
+
 	@Override
 	public void provide(DependencyInfo dependency, Project project, LoomGradleExtension extension, Consumer<Runnable> postPopulationScheduler) throws Exception {
 		MinecraftProvider minecraftProvider = getDependencyManager().getProvider(MinecraftProvider.class);
@@ -83,30 +94,62 @@ public class MappingsProvider extends DependencyProvider {
 			MAPPINGS_DIR.mkdir();
 		}
 
-		if (!MAPPINGS_TINY_BASE.exists() || !MAPPINGS_TINY.exists()) {
-			if (!MAPPINGS_TINY_BASE.exists()) {
-				project.getLogger().lifecycle(":extracting " + mappingsJar.getName());
-				try (FileSystem fileSystem = FileSystems.newFileSystem(mappingsJar.toPath(), null)) {
-					Path fileToExtract = fileSystem.getPath("mappings/mappings.tiny");
-					Files.copy(fileToExtract, MAPPINGS_TINY_BASE.toPath());
+		//Checked again once locked, as another process might have just made them
+		try (CacheLock lock = CacheLock.acquire(MAPPINGS_TINY, project.getLogger())) {
+			if (!MAPPINGS_TINY_BASE.exists() || !MAPPINGS_TINY.exists()) {
+				if (!MAPPINGS_TINY_BASE.exists()) {
+					project.getLogger().lifecycle(":extracting " + mappingsJar.getName());
+					try (FileSystem fileSystem = FileSystems.newFileSystem(mappingsJar.toPath(), null)) {
+						Path fileToExtract = fileSystem.getPath("mappings/mappings.tiny");
+						Files.copy(fileToExtract, MAPPINGS_TINY_BASE.toPath());
+					}
+				}
+
+				if (MAPPINGS_TINY.exists()) {
+					MAPPINGS_TINY.delete();
 				}
-			}
 
-			if (MAPPINGS_TINY.exists()) {
-				MAPPINGS_TINY.delete();
+				proposeFieldNames(project, extension, minecraftProvider.MINECRAFT_MERGED_JAR);
 			}
+		}
+
+		mappedProvider = new MinecraftMappedProvider();
+		mappedProvider.initFiles(project, minecraftProvider, this);
+		mappedProvider.provide(dependency, project, extension, postPopulationScheduler);
+	}
 
-			project.getLogger().lifecycle(":populating field names");
+	/**
+	 * Fill {@link #MAPPINGS_TINY} with the base mappings plus the field names stitch can propose from the given jar.
+	 * The result is kept in the {@link DerivedArtifactStore} by the jar and base mappings, so it can be reused whenever
+	 * the same pair comes up again (such as after cleaning the mappings or a new mappings build with the same contents).
+	 */
+	private void proposeFieldNames(Project project, LoomGradleExtension extension, File mergedJar) throws Exception {
+		DerivedArtifactStore store = extension.getDerivedArtifactStore();
+		String fingerprint = DerivedArtifactStore.fingerprint(mergedJar, MAPPINGS_TINY_BASE);
+
+		if (store.fetch("proposed-mappings", fingerprint, "tiny", MAPPINGS_TINY)) {
+			project.getLogger().info(":reusing proposed field names");
+			return;
+		}
+
+		project.getLogger().lifecycle(":populating field names");
+		//Only locked by the mappings file, so other processes could be proposing from the same jar and base mappings
+		Path temp = Files.createTempFile(MAPPINGS_DIR.toPath(), MAPPINGS_TINY.getName(), ".tmp");
+		try {
 			new CommandProposeFieldNames().run(new String[] {
-					minecraftProvider.MINECRAFT_MERGED_JAR.getAbsolutePath(),
+					mergedJar.getAbsolutePath(),
 					MAPPINGS_TINY_BASE.getAbsolutePath(),
-					MAPPINGS_TINY.getAbsolutePath()
+					temp.toAbsolutePath().toString()
 			});
+
+			store.put("proposed-mappings", fingerprint, "tiny", temp.toFile());
+		} finally {
+			Files.deleteIfExists(temp);
 		}
 
-		mappedProvider = new MinecraftMappedProvider();
-		mappedProvider.initFiles(project, minecraftProvider, this);
-		mappedProvider.provide(dependency, project, extension, postPopulationScheduler);
+		if (!store.fetch("proposed-mappings", fingerprint, "tiny", MAPPINGS_TINY)) {
+			throw new IllegalStateException("Proposed mappings went missing from the derived artifact store");
+		}
 	}
 
 	public void initFiles(Project project) {
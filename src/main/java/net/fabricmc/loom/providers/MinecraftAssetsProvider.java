@@ -29,9 +29,13 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
+import net.fabricmc.loom.util.FileLinker;
 import net.fabricmc.loom.util.MinecraftVersionInfo;
+import net.fabricmc.loom.util.MirrorUtil;
+import net.fabricmc.loom.util.ParallelDownloader;
 import net.fabricmc.loom.util.assets.AssetIndex;
 import net.fabricmc.loom.util.assets.AssetObject;
+import net.fabricmc.loom.util.assets.AssetVerificationIndex;
 import net.fabricmc.loom.util.progress.ProgressLogger;
 
 import org.gradle.api.GradleException;
@@ -41,7 +45,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class MinecraftAssetsProvider {
 	public static void provide(MinecraftProvider minecraftProvider, Project project) throws IOException {
@@ -49,11 +57,56 @@ public class MinecraftAssetsProvider {
 		File assets = new File(extension.getUserCache(), "assets");
 		
 		provide(minecraftProvider, project, assets);
-		project.getLogger().lifecycle(":downloading assets into run directory");
-		provide(minecraftProvider, project, new File(extension.runDir + File.separator + "assets"));
+		File runAssets = new File(extension.runDir + File.separator + "assets");
+		if (extension.linkRunDirAssets) {
+			project.getLogger().lifecycle(":linking assets into run directory");
+			link(minecraftProvider, project, assets, runAssets);
+		} else {
+			project.getLogger().lifecycle(":downloading assets into run directory");
+			provide(minecraftProvider, project, runAssets);
+		}
+	}
+
+	/**
+	 * Fill the given assets directory from one which has already been {@link #provide(MinecraftProvider, Project, File) provided}
+	 * by linking to each object rather than downloading them again. As objects are named by their hash, a link to one
+	 * can never end up pointing to the wrong contents.
+	 */
+	private static void link(MinecraftProvider minecraftProvider, Project project, File from, File to) throws IOException {
+		String indexName = "indexes" + File.separator + minecraftProvider.versionInfo.assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".json";
+		FileLinker linker = new FileLinker();
+
+		Set<String> files = new LinkedHashSet<>();
+		files.add(indexName);
+		for (AssetObject object : readIndex(new File(from, indexName)).getFileMap().values()) {
+			String sha1 = object.getHash();
+			files.add("objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1);
+		}
+
+		int linked = 0;
+		for (String file : files) {
+			Path source = from.toPath().resolve(file);
+			Path target = to.toPath().resolve(file);
+
+			if (!FileLinker.isLinked(source, target)) {
+				linker.link(source, target);
+				linked++;
+			}
+		}
+
+		if (linked > 0) {
+			project.getLogger().info("Linked {} assets into {} ({})", linked, to, linker.getMethod());
+		}
+	}
+
+	private static AssetIndex readIndex(File indexFile) throws IOException {
+		try (FileReader fileReader = new FileReader(indexFile)) {
+			return new Gson().fromJson(fileReader, AssetIndex.class);
+		}
 	}
 
 	public static void provide(MinecraftProvider minecraftProvider, Project project, File assets) throws IOException {
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		boolean offline = project.getGradle().getStartParameter().isOffline();
 
 		MinecraftVersionInfo versionInfo = minecraftProvider.versionInfo;
@@ -64,7 +117,12 @@ public class MinecraftAssetsProvider {
 		}
 
 		File assetsInfo = new File(assets, "indexes" + File.separator + assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".json");
-		if (!assetsInfo.exists() || !Checksum.equals(assetsInfo, assetIndex.sha1)) {
+		AssetVerificationIndex verified = AssetVerificationIndex.load(assets, new File(assets, "indexes" + File.separator + assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".verified"), project.getLogger());
+		if (verified.isVerified(assetsInfo, assetIndex.sha1)) {
+			project.getLogger().debug("Asset index unchanged since last verified");
+		} else if (assetsInfo.exists() && Checksum.equals(assetsInfo, assetIndex.sha1)) {
+			verified.markVerified(assetsInfo, assetIndex.sha1);
+		} else {
 			project.getLogger().lifecycle(":downloading asset index");
 			if (offline) {
 				if (assetsInfo.exists()) {
@@ -75,45 +133,59 @@ public class MinecraftAssetsProvider {
 					throw new GradleException("Asset index not found at " + assetsInfo.getAbsolutePath());
 				}
 			} else {
-				DownloadUtil.downloadIfChanged(new URL(assetIndex.url), assetsInfo, project.getLogger());
+				URL url = MirrorUtil.getURL(project, assetIndex.url);
+				ParallelDownloader.run(assetsInfo.getName(), () -> DownloadUtil.downloadVerified(url, assetsInfo, assetIndex.sha1, assetIndex.size, project.getLogger(), false), extension.downloadAttempts, project.getLogger());
+				verified.markVerified(assetsInfo, assetIndex.sha1);
 			}
 		}
 
 		ProgressLogger progressLogger = ProgressLogger.getProgressFactory(project, MinecraftAssetsProvider.class.getName());
 		progressLogger.start("Downloading assets...", "assets");
-		AssetIndex index;
-		try (FileReader fileReader = new FileReader(assetsInfo)) {
-			index = new Gson().fromJson(fileReader, AssetIndex.class);
-		}
+		AssetIndex index = readIndex(assetsInfo);
 		Map<String, AssetObject> parent = index.getFileMap();
-		final int totalSize = parent.size();
-		int position = 0;
-		project.getLogger().lifecycle(":downloading assets...");
-		for (Map.Entry<String, AssetObject> entry : parent.entrySet()) {
-			AssetObject object = entry.getValue();
-			String sha1 = object.getHash();
-			String filename = "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1;
-			File file = new File(assets, filename);
+		Set<String> seenHashes = new HashSet<>();
+		try (ParallelDownloader downloader = new ParallelDownloader(extension.downloadThreads, extension.downloadsPerHost, extension.downloadAttempts, project.getLogger())) {
+			project.getLogger().lifecycle(":downloading assets...");
+			for (Map.Entry<String, AssetObject> entry : parent.entrySet()) {
+				AssetObject object = entry.getValue();
+				String sha1 = object.getHash();
+				if (!seenHashes.add(sha1)) {
+					continue; //Another name for an object we're already fetching, don't have two threads writing the same file
+				}
 
-			if (!file.exists() || !Checksum.equals(file, sha1)) {
-				if (offline) {
-					if (file.exists()) {
-						project.getLogger().warn("Outdated asset " + entry.getKey());
+				String filename = "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1;
+				File file = new File(assets, filename);
+				URL url = MirrorUtil.getURL(project, Constants.RESOURCES_BASE + sha1.substring(0, 2) + "/" + sha1);
+
+				downloader.submit(entry.getKey(), url, () -> {
+					if (verified.isVerified(file, sha1)) {
+						return; //Nothing has touched it since we last checked
+					}
+
+					if (file.exists() && Checksum.equals(file, sha1)) {
+						verified.markVerified(file, sha1);
 					} else {
-						throw new GradleException("Asset " + entry.getKey() + " not found at " + file.getAbsolutePath());
+						if (offline) {
+							if (file.exists()) {
+								project.getLogger().warn("Outdated asset " + entry.getKey());
+							} else {
+								throw new GradleException("Asset " + entry.getKey() + " not found at " + file.getAbsolutePath());
+							}
+						} else {
+							project.getLogger().debug(":downloading asset " + entry.getKey());
+							DownloadUtil.downloadVerified(url, file, sha1, object.getSize(), project.getLogger(), true);
+							verified.markVerified(file, sha1);
+						}
 					}
-				} else {
-					project.getLogger().debug(":downloading asset " + entry.getKey());
-					DownloadUtil.downloadIfChanged(new URL(Constants.RESOURCES_BASE + sha1.substring(0, 2) + "/" + sha1), file, project.getLogger(), true);
-				}
+				});
 			}
-			String assetName = entry.getKey();
-			int end = assetName.lastIndexOf("/") + 1;
-			if (end > 0) {
-				assetName = assetName.substring(end);
+
+			try {
+				downloader.await(progressLogger, "assets downloaded");
+			} finally {
+				//Even if something went wrong, remember what was fine so it doesn't need checking again
+				verified.save();
 			}
-			progressLogger.progress(assetName + " - " + position + "/" + totalSize + " (" + (int) ((position / (double) totalSize) * 100) + "%) assets downloaded");
-			position++;
 		}
 
 		progressLogger.completed();
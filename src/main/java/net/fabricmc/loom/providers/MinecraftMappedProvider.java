@@ -25,12 +25,17 @@
 package net.fabricmc.loom.providers;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.CacheLock;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DependencyProvider;
+import net.fabricmc.loom.util.DerivedArtifactStore;
+import net.fabricmc.loom.util.MapJarsIncremental;
 import net.fabricmc.loom.util.MapJarsTiny;
+import net.fabricmc.tinyremapper.TinyRemapper;
 import org.gradle.api.Project;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.function.Consumer;
 
@@ -38,6 +43,9 @@ public class MinecraftMappedProvider extends DependencyProvider {
     public File MINECRAFT_MAPPED_JAR;
     public File MINECRAFT_INTERMEDIARY_JAR;
 
+    /** The settings the jars are remapped with, in case they change */
+    private static final String REMAPPER = "tiny-remapper " + TinyRemapper.class.getPackage().getImplementationVersion() + " renameInvalidLocals rebuildSourceFilenames";
+
     private MinecraftProvider minecraftProvider;
 
     @Override
@@ -50,14 +58,31 @@ public class MinecraftMappedProvider extends DependencyProvider {
             throw new RuntimeException("input merged jar not found");
         }
 
-        if(!getMappedJar().exists() || !getIntermediaryJar().exists()){
-            if (getMappedJar().exists()) {
-                getMappedJar().delete();
-            }
-            if (getIntermediaryJar().exists()) {
-                getIntermediaryJar().delete();
+        //Every mapped jar for these mappings is derived with the same intermediary jar, so that's what is locked
+        try (CacheLock lock = CacheLock.acquire(getIntermediaryJar(), project.getLogger())) {
+            DerivedArtifactStore store = extension.getDerivedArtifactStore();
+            File mappings = extension.getMappingsProvider().MAPPINGS_TINY;
+            File mergedJar = minecraftProvider.getMergedJar();
+            //The libraries are only given in the version info, and the intermediary jar only needs the official and intermediary names
+            String intermediaryFingerprint = DerivedArtifactStore.fingerprint(mergedJar, minecraftProvider.getVersionInfoJson(), REMAPPER,
+                    extension.getMappingsProvider().hashNamespaces("official", "intermediary"));
+            String mappedFingerprint = DerivedArtifactStore.fingerprint(mergedJar, minecraftProvider.getVersionInfoJson(), REMAPPER, mappings);
+
+            boolean haveIntermediary = store.fetch("intermediary", intermediaryFingerprint, getIntermediaryJar());
+            if (!store.fetch("mapped", mappedFingerprint, getMappedJar()) || !haveIntermediary) {
+                //Only the mapped jar depends on the exact mappings version, so if the intermediary jar is still around try reuse an older mapped jar
+                if (!haveIntermediary || !new MapJarsIncremental().mapJar(this, project)) {
+                    //Either might be a link to a stored entry, which mustn't be written into
+                    Files.deleteIfExists(getMappedJar().toPath());
+                    Files.deleteIfExists(getIntermediaryJar().toPath());
+                    new MapJarsTiny().mapJars(minecraftProvider, this, project);
+
+                    store.put("intermediary", intermediaryFingerprint, getIntermediaryJar());
+                }
+
+                store.put("mapped", mappedFingerprint, getMappedJar());
+                MapJarsIncremental.recordMappings(getMappedJar(), mappings);
             }
-            new MapJarsTiny().mapJars(minecraftProvider, this, project);
         }
 
         if (!MINECRAFT_MAPPED_JAR.exists()) {
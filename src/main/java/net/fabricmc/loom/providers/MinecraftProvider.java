@@ -24,27 +24,27 @@
 
 package net.fabricmc.loom.providers;
 
-import com.google.common.io.Files;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.*;
-import net.fabricmc.stitch.merge.JarMerger;
+import net.fabricmc.loom.util.progress.ProgressLogger;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.zip.ZipError;
+import java.util.zip.ZipException;
 
 public class MinecraftProvider extends DependencyProvider {
+	public static final String VERSION_MANIFEST = "https://launchermeta.mojang.com/mc/game/version_manifest.json";
 
 	public String minecraftVersion;
 
@@ -55,6 +55,7 @@ public class MinecraftProvider extends DependencyProvider {
 	File MINECRAFT_CLIENT_JAR;
 	File MINECRAFT_SERVER_JAR;
 	File MINECRAFT_MERGED_JAR;
+	String versionInfoUrl;
 
 	Gson gson = new Gson();
 
@@ -64,40 +65,57 @@ public class MinecraftProvider extends DependencyProvider {
 		boolean offline = project.getGradle().getStartParameter().isOffline();
 
 		initFiles(project);
-
 		downloadMcJson(project, offline);
-		try (FileReader reader = new FileReader(MINECRAFT_JSON)) {
-			versionInfo = gson.fromJson(reader, MinecraftVersionInfo.class);
-		}
+		versionInfo = ParsedJsonCache.read(MINECRAFT_JSON, MinecraftVersionInfo.class, gson);
 
 		// Add Loom as an annotation processor
         addDependency(project.files(this.getClass().getProtectionDomain().getCodeSource().getLocation()), project, "compileOnly");
 
-        if (offline) {
-        	if (MINECRAFT_CLIENT_JAR.exists() && MINECRAFT_SERVER_JAR.exists()) {
-        		project.getLogger().debug("Found client and server jars, presuming up-to-date");
-        	} else if (MINECRAFT_MERGED_JAR.exists()) {
-        		//Strictly we don't need the split jars if the merged one exists, let's try go on
-        		project.getLogger().warn("Missing game jar but merged jar present, things might end badly");
-        	} else {
-        		throw new GradleException("Missing jar(s); Client: " + MINECRAFT_CLIENT_JAR.exists() + ", Server: " + MINECRAFT_SERVER_JAR.exists());
-        	}
-        } else {
-        	downloadJars(project.getLogger());
-        }
-
-		libraryProvider = new MinecraftLibraryProvider();
-		libraryProvider.provide(this, project);
-
-		if (!MINECRAFT_MERGED_JAR.exists()) {
-			try {
-				mergeJars(project.getLogger());
-			} catch (ZipError e) {
-				DownloadUtil.delete(MINECRAFT_CLIENT_JAR);
-				DownloadUtil.delete(MINECRAFT_SERVER_JAR);
-
-				project.getLogger().error("Could not merge JARs! Deleting source JARs - please re-run the command and move on.", e);
-				throw new RuntimeException();
+		//The client and server jars are independent of each other, so fetch them both at once
+		try (ParallelDownloader downloader = offline ? null : new ParallelDownloader(2, extension.downloadsPerHost, extension.downloadAttempts, project.getLogger())) {
+			if (offline) {
+				if (MINECRAFT_CLIENT_JAR.exists() && MINECRAFT_SERVER_JAR.exists()) {
+					project.getLogger().debug("Found client and server jars, presuming up-to-date");
+				} else if (MINECRAFT_MERGED_JAR.exists()) {
+					//Strictly we don't need the split jars if the merged one exists, let's try go on
+					project.getLogger().warn("Missing game jar but merged jar present, things might end badly");
+				} else {
+					throw new GradleException("Missing jar(s); Client: " + MINECRAFT_CLIENT_JAR.exists() + ", Server: " + MINECRAFT_SERVER_JAR.exists());
+				}
+			} else {
+				downloadJars(downloader, project);
+			}
+
+			//Registering the libraries only needs the version info, so it can be done whilst the jars are downloading
+			libraryProvider = new MinecraftLibraryProvider();
+			libraryProvider.provide(this, project);
+
+			if (downloader != null) {
+				ProgressLogger progressLogger = ProgressLogger.getProgressFactory(project, MinecraftProvider.class.getName());
+				progressLogger.start("Downloading Minecraft " + minecraftVersion + " jars...", "jars");
+				downloader.await(progressLogger, "jars downloaded");
+				progressLogger.completed();
+			}
+		}
+
+		try (CacheLock lock = CacheLock.acquire(MINECRAFT_MERGED_JAR, project.getLogger())) {
+			//Without both jars there's no telling what the merged jar should be, so whatever is there will have to do
+			DerivedArtifactStore store = extension.getDerivedArtifactStore();
+			String fingerprint = MINECRAFT_CLIENT_JAR.exists() && MINECRAFT_SERVER_JAR.exists() ? DerivedArtifactStore.fingerprint(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, "syntheticParamsOffset") : null;
+
+			if (fingerprint != null ? !store.fetch("merged", fingerprint, MINECRAFT_MERGED_JAR) : !MINECRAFT_MERGED_JAR.exists()) {
+				try {
+					Files.deleteIfExists(MINECRAFT_MERGED_JAR.toPath()); //Might be a link to another version's
+					mergeJars(project.getLogger());
+				} catch (ZipError | ZipException e) {
+					DownloadUtil.delete(MINECRAFT_CLIENT_JAR);
+					DownloadUtil.delete(MINECRAFT_SERVER_JAR);
+
+					project.getLogger().error("Could not merge JARs! Deleting source JARs - please re-run the command and move on.", e);
+					throw new RuntimeException();
+				}
+
+				if (fingerprint != null) store.put("merged", fingerprint, MINECRAFT_MERGED_JAR);
 			}
 		}
 	}
@@ -112,10 +130,52 @@ public class MinecraftProvider extends DependencyProvider {
 	}
 
 	private void downloadMcJson(Project project, boolean offline) throws IOException {
+		if (offline) {
+			if (MINECRAFT_JSON.exists()) {
+				//If there is the manifest already we'll presume that's good enough
+				project.getLogger().debug("Found Minecraft {} manifest, presuming up-to-date", minecraftVersion);
+			} else {
+				//If we don't have the manifest then there's nothing more we can do
+				throw new GradleException("Minecraft " + minecraftVersion + " manifest not found at " + MINECRAFT_JSON.getAbsolutePath());
+			}
+		} else if (isFresh(project, MINECRAFT_JSON)) {
+			project.getLogger().debug("Minecraft {} manifest checked recently, presuming up-to-date", minecraftVersion);
+		} else if (StaticPathWatcher.INSTANCE.hasFileChanged(MINECRAFT_JSON.toPath())) {
+			//Only now is the version manifest needed, to find out where to get the Minecraft manifest from
+			LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+			String versionUrl = getVersionInfoUrl(project);
+
+			project.getLogger().debug("Downloading Minecraft {} manifest", minecraftVersion);
+			//A custom manifest isn't from Mojang, so won't be in the mirror
+			URL url = extension.customManifest != null ? new URL(versionUrl) : MirrorUtil.getURL(project, versionUrl);
+			ParallelDownloader.run(MINECRAFT_JSON.getName(), () -> {
+				try (CacheLock lock = CacheLock.acquire(MINECRAFT_JSON, project.getLogger())) {
+					DownloadUtil.downloadIfChanged(url, MINECRAFT_JSON, project.getLogger());
+				}
+			}, extension.downloadAttempts, project.getLogger());
+		}
+	}
+
+	/**
+	 * Find where the Minecraft manifest for the current version comes from, downloading the version manifests if needed
+	 *
+	 * @param project The project to find the Minecraft manifest for
+	 *
+	 * @return The URL of the Minecraft manifest
+	 *
+	 * @throws IOException If an exception occurs downloading or reading the version manifests
+	 */
+	public String getVersionInfoUrl(Project project) throws IOException {
+		if (versionInfoUrl != null) return versionInfoUrl;
+
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
-		File manifests = new File(extension.getUserCache(), "version_manifest.json");
+		if (extension.customManifest != null) {
+			project.getLogger().lifecycle("Using custom minecraft manifest");
+			return versionInfoUrl = extension.customManifest;
+		}
 
-		if (offline) {
+		File manifests = new File(extension.getUserCache(), "version_manifest.json");
+		if (project.getGradle().getStartParameter().isOffline()) {
 			if (manifests.exists()) {
 				//If there is the manifests already we'll presume that's good enough
 				project.getLogger().debug("Found version manifests, presuming up-to-date");
@@ -123,71 +183,80 @@ public class MinecraftProvider extends DependencyProvider {
 				//If we don't have the manifests then there's nothing more we can do
 				throw new GradleException("Version manifests not found at " + manifests.getAbsolutePath());
 			}
-		} else {
-			if (StaticPathWatcher.INSTANCE.hasFileChanged(manifests.toPath())) {
-				project.getLogger().debug("Downloading version manifests");
-				DownloadUtil.downloadIfChanged(new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json"), manifests, project.getLogger());
-			}
+		} else if (isFresh(project, manifests)) {
+			project.getLogger().debug("Version manifests checked recently, presuming up-to-date");
+		} else if (StaticPathWatcher.INSTANCE.hasFileChanged(manifests.toPath())) {
+			project.getLogger().debug("Downloading version manifests");
+			URL url = MirrorUtil.getURL(project, VERSION_MANIFEST);
+			ParallelDownloader.run(manifests.getName(), () -> {
+				try (CacheLock lock = CacheLock.acquire(manifests, project.getLogger())) {
+					DownloadUtil.downloadIfChanged(url, manifests, project.getLogger());
+				}
+			}, extension.downloadAttempts, project.getLogger());
 		}
 
-		String versionManifest = Files.asCharSource(manifests, StandardCharsets.UTF_8).read();
-		ManifestVersion mcManifest = new GsonBuilder().create().fromJson(versionManifest, ManifestVersion.class);
-
+		ManifestVersion mcManifest = ParsedJsonCache.read(manifests, ManifestVersion.class, gson);
 		Optional<ManifestVersion.Versions> optionalVersion = mcManifest.versions.stream().filter(versions -> versions.id.equalsIgnoreCase(minecraftVersion)).findFirst();
 
-		if(extension.customManifest != null){
-			ManifestVersion.Versions customVersion = new ManifestVersion.Versions();
-			customVersion.id = minecraftVersion;
-			customVersion.url = extension.customManifest;
-			optionalVersion = Optional.of(customVersion);
-			project.getLogger().lifecycle("Using custom minecraft manifest");
-		}
-
 		if (optionalVersion.isPresent()) {
-			if (offline) {
-				if (MINECRAFT_JSON.exists()) {
-					//If there is the manifest already we'll presume that's good enough
-					project.getLogger().debug("Found Minecraft {} manifest, presuming up-to-date", minecraftVersion);
-				} else {
-					//If we don't have the manifests then there's nothing more we can do
-					throw new GradleException("Minecraft " + minecraftVersion + " manifest not found at " + MINECRAFT_JSON.getAbsolutePath());
-				}
-			} else {
-				if (StaticPathWatcher.INSTANCE.hasFileChanged(MINECRAFT_JSON.toPath())) {
-					project.getLogger().debug("Downloading Minecraft {} manifest", minecraftVersion);
-					DownloadUtil.downloadIfChanged(new URL(optionalVersion.get().url), MINECRAFT_JSON, project.getLogger());
-				}
-			}
+			return versionInfoUrl = optionalVersion.get().url;
 		} else {
 			throw new RuntimeException("Failed to find minecraft version: " + minecraftVersion);
 		}
+	}
+
+	private static boolean isFresh(Project project, File file) {
+		//Refreshing dependencies should refresh the manifests too
+		if (project.getGradle().getStartParameter().isRefreshDependencies()) return false;
 
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		return DownloadUtil.isFresh(file, TimeUnit.SECONDS.toMillis(extension.versionManifestTTL));
 	}
 
-	private void downloadJars(Logger logger) throws IOException {
-		if (!MINECRAFT_CLIENT_JAR.exists() || (!Checksum.equals(MINECRAFT_CLIENT_JAR, versionInfo.downloads.get("client").sha1) && StaticPathWatcher.INSTANCE.hasFileChanged(MINECRAFT_CLIENT_JAR.toPath()))) {
-			logger.debug("Downloading Minecraft {} client jar", minecraftVersion);
-			DownloadUtil.downloadIfChanged(new URL(versionInfo.downloads.get("client").url), MINECRAFT_CLIENT_JAR, logger);
-		}
+	private void downloadJars(ParallelDownloader downloader, Project project) throws IOException {
+		downloadJar(downloader, "client", MINECRAFT_CLIENT_JAR, project);
+		downloadJar(downloader, "server", MINECRAFT_SERVER_JAR, project);
+	}
 
-		if (!MINECRAFT_SERVER_JAR.exists() || (!Checksum.equals(MINECRAFT_SERVER_JAR, versionInfo.downloads.get("server").sha1) && StaticPathWatcher.INSTANCE.hasFileChanged(MINECRAFT_SERVER_JAR.toPath()))) {
-			logger.debug("Downloading Minecraft {} server jar", minecraftVersion);
-			DownloadUtil.downloadIfChanged(new URL(versionInfo.downloads.get("server").url), MINECRAFT_SERVER_JAR, logger);
-		}
+	private void downloadJar(ParallelDownloader downloader, String side, File jar, Project project) throws IOException {
+		MinecraftVersionInfo.Downloads download = versionInfo.downloads.get(side);
+		URL url = MirrorUtil.getURL(project, download.url);
+		Logger logger = project.getLogger();
+
+		downloader.submit(jar.getName(), url, () -> {
+			//Another process might be part way through downloading the same jar, no sense both doing it
+			try (CacheLock lock = CacheLock.acquire(jar, logger)) {
+				if (!jar.exists() || (!Checksum.equals(jar, download.sha1) && StaticPathWatcher.INSTANCE.hasFileChanged(jar.toPath()))) {
+					logger.debug("Downloading Minecraft {} {} jar", minecraftVersion, side);
+					DownloadUtil.downloadVerified(url, jar, download.sha1, download.size, logger, false);
+				}
+			}
+		});
 	}
 
 	private void mergeJars(Logger logger) throws IOException {
 		logger.lifecycle(":merging jars");
-		try (JarMerger jarMerger = new JarMerger(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR)) {
-			jarMerger.enableSyntheticParamsOffset();
-			jarMerger.merge();
-		}
+		ParallelJarMerger jarMerger = new ParallelJarMerger(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR);
+		jarMerger.enableSyntheticParamsOffset();
+		jarMerger.merge(Runtime.getRuntime().availableProcessors());
 	}
 
 	public File getMergedJar() {
 		return MINECRAFT_MERGED_JAR;
 	}
 
+	public File getVersionInfoJson() {
+		return MINECRAFT_JSON;
+	}
+
+	public File getClientJar() {
+		return MINECRAFT_CLIENT_JAR;
+	}
+
+	public File getServerJar() {
+		return MINECRAFT_SERVER_JAR;
+	}
+
 	@Override
 	public String getTargetConfig() {
 		return Constants.MINECRAFT;
@@ -36,5 +36,6 @@ public class CleanLoomBinaries extends AbstractLoomTask {
         extension.getMinecraftProvider().getMergedJar().delete();
         extension.getMinecraftMappedProvider().getIntermediaryJar().delete();
         extension.getMinecraftMappedProvider().getMappedJar().delete();
+        extension.getDerivedArtifactStore().clear();
     }
 }
@@ -25,6 +25,7 @@
 package net.fabricmc.loom.task;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.providers.MappingsCache;
 import net.fabricmc.loom.util.DeletingFileVisitor;
 import org.gradle.api.Project;
 import org.gradle.api.tasks.TaskAction;
@@ -38,6 +39,7 @@ public class CleanLoomMappings extends AbstractLoomTask {
         Project project = this.getProject();
         LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
         extension.getMappingsProvider().MAPPINGS_TINY.delete();
+        MappingsCache.getBinaryPath(extension.getMappingsProvider().MAPPINGS_TINY.toPath()).toFile().delete();
         extension.getMappingsProvider().MAPPINGS_TINY_BASE.delete();
         extension.getMinecraftMappedProvider().getIntermediaryJar().delete();
         extension.getMinecraftMappedProvider().getMappedJar().delete();
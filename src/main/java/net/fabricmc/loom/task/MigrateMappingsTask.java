@@ -27,7 +27,8 @@ package net.fabricmc.loom.task;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.Version;
-import net.fabricmc.mappings.*;
+import net.fabricmc.loom.util.mappings.TinyMappings;
+import net.fabricmc.loom.util.mappings.TinyMappingsCompiler;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsReader;
 import org.cadixdev.mercury.Mercury;
@@ -36,7 +37,6 @@ import org.gradle.api.Project;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -90,12 +90,8 @@ public class MigrateMappingsTask extends AbstractLoomTask {
             }
         }
 
-        Mappings sourceMappings = extension.getMappingsProvider().getMappings();
-        Mappings targetMappings;
-
-        try (FileInputStream stream = new FileInputStream(mappingsFile)) {
-            targetMappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(stream, false);
-        }
+        TinyMappings sourceMappings = extension.getMappingsProvider().getMappings();
+        TinyMappings targetMappings = TinyMappingsCompiler.read(mappingsFile.toPath());
 
         project.getLogger().lifecycle(":joining mappings");
         MappingSet mappingSet = new MappingsJoiner(sourceMappings, targetMappings, "intermediary", "named").read();
@@ -127,10 +123,10 @@ public class MigrateMappingsTask extends AbstractLoomTask {
     }
 
     public static class MappingsJoiner extends MappingsReader {
-        private final Mappings sourceMappings, targetMappings;
+        private final TinyMappings sourceMappings, targetMappings;
         private final String fromNamespace, toNamespace;
 
-        public MappingsJoiner(Mappings sourceMappings, Mappings targetMappings, String fromNamespace, String toNamespace) {
+        public MappingsJoiner(TinyMappings sourceMappings, TinyMappings targetMappings, String fromNamespace, String toNamespace) {
             this.sourceMappings = sourceMappings;
             this.targetMappings = targetMappings;
             this.fromNamespace = fromNamespace;
@@ -139,37 +135,48 @@ public class MigrateMappingsTask extends AbstractLoomTask {
 
         @Override
         public MappingSet read(MappingSet mappings) throws IOException {
-            Map<String, ClassEntry> targetClasses = new HashMap<>();
-            Map<EntryTriple, FieldEntry> targetFields = new HashMap<>();
-            Map<EntryTriple, MethodEntry> targetMethods = new HashMap<>();
+            int sourceFrom = sourceMappings.getNamespaceId(fromNamespace), sourceTo = sourceMappings.getNamespaceId(toNamespace);
+            int targetFrom = targetMappings.getNamespaceId(fromNamespace), targetTo = targetMappings.getNamespaceId(toNamespace);
+
+            Map<String, String> targetClasses = new HashMap<>();
+            Map<String, String> targetFields = new HashMap<>();
+            Map<String, String> targetMethods = new HashMap<>();
 
-            targetMappings.getClassEntries().forEach((c) -> targetClasses.put(c.get(fromNamespace), c));
-            targetMappings.getFieldEntries().forEach((c) -> targetFields.put(c.get(fromNamespace), c));
-            targetMappings.getMethodEntries().forEach((c) -> targetMethods.put(c.get(fromNamespace), c));
+            for (int i = 0, end = targetMappings.getClassCount(); i < end; i++) {
+                targetClasses.put(targetMappings.getClassName(i, targetFrom), targetMappings.getClassName(i, targetTo));
+            }
+            for (int i = 0, end = targetMappings.getFieldCount(); i < end; i++) {
+                String key = targetMappings.getFieldOwner(i, targetFrom) + '/' + targetMappings.getFieldName(i, targetFrom) + ';' + targetMappings.getFieldDesc(i, targetFrom);
+                targetFields.put(key, targetMappings.getFieldName(i, targetTo));
+            }
+            for (int i = 0, end = targetMappings.getMethodCount(); i < end; i++) {
+                String key = targetMappings.getMethodOwner(i, targetFrom) + '/' + targetMappings.getMethodName(i, targetFrom) + targetMappings.getMethodDesc(i, targetFrom);
+                targetMethods.put(key, targetMappings.getMethodName(i, targetTo));
+            }
 
-            for (ClassEntry entry : sourceMappings.getClassEntries()) {
-                String from = entry.get(toNamespace);
-                String to = targetClasses.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+            for (int i = 0, end = sourceMappings.getClassCount(); i < end; i++) {
+                String from = sourceMappings.getClassName(i, sourceTo);
+                String to = targetClasses.get(sourceMappings.getClassName(i, sourceFrom));
 
-                mappings.getOrCreateClassMapping(from).setDeobfuscatedName(to);
+                mappings.getOrCreateClassMapping(from).setDeobfuscatedName(to != null ? to : from);
             }
 
-            for (FieldEntry entry : sourceMappings.getFieldEntries()) {
-                EntryTriple fromEntry = entry.get(toNamespace);
-                EntryTriple toEntry = targetFields.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+            for (int i = 0, end = sourceMappings.getFieldCount(); i < end; i++) {
+                String from = sourceMappings.getFieldName(i, sourceTo);
+                String to = targetFields.get(sourceMappings.getFieldOwner(i, sourceFrom) + '/' + sourceMappings.getFieldName(i, sourceFrom) + ';' + sourceMappings.getFieldDesc(i, sourceFrom));
 
-                mappings.getOrCreateClassMapping(fromEntry.getOwner())
-                        .getOrCreateFieldMapping(fromEntry.getName(), fromEntry.getDesc())
-                        .setDeobfuscatedName(toEntry.getName());
+                mappings.getOrCreateClassMapping(sourceMappings.getFieldOwner(i, sourceTo))
+                        .getOrCreateFieldMapping(from, sourceMappings.getFieldDesc(i, sourceTo))
+                        .setDeobfuscatedName(to != null ? to : from);
             }
 
-            for (MethodEntry entry : sourceMappings.getMethodEntries()) {
-                EntryTriple fromEntry = entry.get(toNamespace);
-                EntryTriple toEntry = targetMethods.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+            for (int i = 0, end = sourceMappings.getMethodCount(); i < end; i++) {
+                String from = sourceMappings.getMethodName(i, sourceTo);
+                String to = targetMethods.get(sourceMappings.getMethodOwner(i, sourceFrom) + '/' + sourceMappings.getMethodName(i, sourceFrom) + sourceMappings.getMethodDesc(i, sourceFrom));
 
-                mappings.getOrCreateClassMapping(fromEntry.getOwner())
-                        .getOrCreateMethodMapping(fromEntry.getName(), fromEntry.getDesc())
-                        .setDeobfuscatedName(toEntry.getName());
+                mappings.getOrCreateClassMapping(sourceMappings.getMethodOwner(i, sourceTo))
+                        .getOrCreateMethodMapping(from, sourceMappings.getMethodDesc(i, sourceTo))
+                        .setDeobfuscatedName(to != null ? to : from);
             }
 
             return mappings;
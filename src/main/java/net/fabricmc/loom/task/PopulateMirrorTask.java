@@ -0,0 +1,165 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.providers.MinecraftAssetsProvider;
+import net.fabricmc.loom.providers.MinecraftProvider;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.FileHashCache;
+import net.fabricmc.loom.util.FileLinker;
+import net.fabricmc.loom.util.MinecraftVersionInfo;
+import net.fabricmc.loom.util.MirrorUtil;
+import net.fabricmc.loom.util.assets.AssetIndex;
+import net.fabricmc.loom.util.assets.AssetObject;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fills a {@link MirrorUtil mirror} directory with everything the project downloads from Mojang, taken from the user cache.
+ * The directory is either given with <code>-PmirrorDir=...</code>, or is the mirror the project is already set to use.
+ * Libraries only go in if Mojang's library server has them, those from other repositories are left out.
+ */
+public class PopulateMirrorTask extends AbstractLoomTask {
+	@TaskAction
+	public void populate() throws IOException {
+		Project project = getProject();
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+
+		File mirror = project.hasProperty("mirrorDir") ? project.file(project.property("mirrorDir")) : MirrorUtil.getDirectory(project);
+		if (mirror == null) {
+			throw new GradleException("No mirror directory to populate, either pass -PmirrorDir or set the mirror to a directory");
+		}
+
+		MinecraftProvider minecraftProvider = extension.getMinecraftProvider();
+		MinecraftVersionInfo versionInfo = minecraftProvider.versionInfo;
+		//Make sure all the assets are actually there first, they're only downloaded when needed otherwise
+		File assets = new File(extension.getUserCache(), "assets");
+		MinecraftAssetsProvider.provide(minecraftProvider, project, assets);
+
+		Map<String, File> files = new LinkedHashMap<>();
+		files.put(MinecraftProvider.VERSION_MANIFEST, new File(extension.getUserCache(), "version_manifest.json"));
+		if (extension.customManifest == null) files.put(minecraftProvider.getVersionInfoUrl(project), minecraftProvider.getVersionInfoJson());
+		files.put(versionInfo.downloads.get("client").url, minecraftProvider.getClientJar());
+		files.put(versionInfo.downloads.get("server").url, minecraftProvider.getServerJar());
+
+		File assetIndex = new File(assets, "indexes" + File.separator + versionInfo.assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".json");
+		files.put(versionInfo.assetIndex.url, assetIndex);
+		try (FileReader reader = new FileReader(assetIndex)) {
+			for (AssetObject object : new Gson().fromJson(reader, AssetIndex.class).getFileMap().values()) {
+				String sha1 = object.getHash();
+				String path = sha1.substring(0, 2) + '/' + sha1;
+				files.put(Constants.RESOURCES_BASE + path, new File(assets, "objects" + File.separator + path));
+			}
+		}
+
+		//Only what Mojang's library server has belongs in the mirror, anything else was resolved from another repository
+		Map<String, String> mojangLibraries = getMojangLibraries(versionInfo);
+		int skipped = 0;
+		for (ResolvedArtifact artifact : project.getConfigurations().getByName(Constants.MINECRAFT_DEPENDENCIES).getResolvedConfiguration().getResolvedArtifacts()) {
+			ModuleVersionIdentifier id = artifact.getModuleVersion().getId();
+			String classifier = artifact.getClassifier() != null ? '-' + artifact.getClassifier() : "";
+			String path = id.getGroup().replace('.', '/') + '/' + id.getName() + '/' + id.getVersion() + '/' + id.getName() + '-' + id.getVersion() + classifier + '.' + artifact.getExtension();
+			String sha1 = mojangLibraries.get(path);
+
+			if (sha1 == null) {
+				project.getLogger().info("Not mirroring {} as it isn't one of Mojang's libraries", id);
+				skipped++;
+			} else if (!sha1.isEmpty() && artifact.getFile().exists() && !Checksum.matches(FileHashCache.INSTANCE.sha1(artifact.getFile()), sha1)) {
+				project.getLogger().warn("Not mirroring {} as it was resolved from somewhere other than Mojang's library server", id);
+				skipped++;
+			} else {
+				files.put(Constants.LIBRARIES_BASE + path, artifact.getFile());
+			}
+		}
+		if (skipped > 0) {
+			project.getLogger().lifecycle("Skipped {} libraries which don't come from Mojang's library server", skipped);
+		}
+
+		project.getLogger().lifecycle(":populating mirror at " + mirror);
+		int copied = 0;
+		for (Map.Entry<String, File> entry : files.entrySet()) {
+			File source = entry.getValue();
+			File target = new File(mirror, MirrorUtil.getPath(entry.getKey()));
+
+			if (!source.exists()) {
+				project.getLogger().warn("Missing {} from the user cache, mirror will be incomplete", source);
+			} else if (!FileLinker.isLinked(source.toPath(), target.toPath())) {
+				FileUtils.copyFile(source, target, true);
+				copied++;
+			}
+		}
+
+		project.getLogger().lifecycle("Copied {} of {} files into the mirror", copied, files.size());
+	}
+
+	/**
+	 * Get the path (relative to {@link Constants#LIBRARIES_BASE}) of every library Mojang hosts for the given version,
+	 * along with its SHA-1 if known (or an empty string if not)
+	 */
+	private static Map<String, String> getMojangLibraries(MinecraftVersionInfo versionInfo) {
+		Map<String, String> libraries = new HashMap<>();
+
+		for (MinecraftVersionInfo.Library library : versionInfo.libraries) {
+			if (library.downloads == null) {
+				//Older version files don't say where each library comes from, they were all on Mojang's server then
+				libraries.put(library.getURL().substring(Constants.LIBRARIES_BASE.length()), "");
+				continue;
+			}
+
+			addDownload(libraries, library.downloads.getAsJsonObject("artifact"));
+			JsonObject classifiers = library.downloads.getAsJsonObject("classifiers");
+			if (classifiers != null) {
+				for (Map.Entry<String, JsonElement> classifier : classifiers.entrySet()) {
+					addDownload(libraries, classifier.getValue().getAsJsonObject());
+				}
+			}
+		}
+
+		return libraries;
+	}
+
+	private static void addDownload(Map<String, String> libraries, JsonObject download) {
+		if (download == null || !download.has("path") || !download.has("url")) return;
+		if (!download.get("url").getAsString().startsWith(Constants.LIBRARIES_BASE)) return;
+
+		libraries.put(download.get("path").getAsString(), download.has("sha1") ? download.get("sha1").getAsString() : "");
+	}
+}
@@ -28,6 +28,7 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.util.MixinRefmapHelper;
 import net.fabricmc.loom.util.NestedJars;
+import net.fabricmc.loom.util.SkeletonClasspath;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
@@ -45,6 +46,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -101,7 +103,7 @@ public class RemapJarTask extends Jar {
 
 		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(output).build()) {
 			outputConsumer.addNonClassFiles(input);
-			remapper.readClassPath(classpath);
+			remapper.readClassPath(SkeletonClasspath.get(getProject(), Arrays.asList(classpath)));
 			remapper.readInputs(input);
 			remapper.apply(outputConsumer);
 		} catch (Exception e) {
@@ -0,0 +1,123 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops more than one thread or process deriving the same file in the user cache at once. Whoever gets the lock first
+ * does the work, everyone else waits for them and should then find the file they wanted already there.
+ *
+ * <p>Holders should check whether the file needs making again once they have the lock rather than before, as it may
+ * well have been made whilst they were waiting. Locks are reentrant for the thread which holds them.
+ *
+ * <pre>
+ * try (CacheLock lock = CacheLock.acquire(file, logger)) {
+ *     if (!file.exists()) make(file);
+ * }
+ * </pre>
+ */
+public final class CacheLock implements AutoCloseable {
+	/** File locks are held by the whole JVM, so threads within it have to take turns separately */
+	private static final ConcurrentMap<String, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	private final ReentrantLock localLock;
+	private final FileChannel channel;
+	private final FileLock fileLock;
+
+	private CacheLock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+		this.localLock = localLock;
+		this.channel = channel;
+		this.fileLock = fileLock;
+	}
+
+	/**
+	 * Take the lock for making the given file, waiting for whoever has it currently to finish
+	 *
+	 * @param file The file which is going to be made
+	 * @param logger The logger to say who is being waited for to
+	 *
+	 * @return The lock, to be {@link #close() closed} once the file has been made
+	 *
+	 * @throws IOException If an exception occurs taking the lock
+	 */
+	public static CacheLock acquire(File file, Logger logger) throws IOException {
+		File lockFile = new File(file.getAbsolutePath() + ".lock");
+		ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(lockFile.getPath(), path -> new ReentrantLock());
+
+		if (!localLock.tryLock()) {
+			logger.lifecycle(":waiting for another build to finish with " + file.getName());
+			localLock.lock();
+		}
+
+		if (localLock.getHoldCount() > 1) {
+			//Already have the file lock too, it can't be taken twice
+			return new CacheLock(localLock, null, null);
+		}
+
+		FileChannel channel = null;
+		try {
+			lockFile.getParentFile().mkdirs();
+			channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+			FileLock fileLock = channel.tryLock();
+			if (fileLock == null) {
+				logger.lifecycle(":waiting for another process to finish with " + file.getName());
+				fileLock = channel.lock();
+			}
+
+			return new CacheLock(localLock, channel, fileLock);
+		} catch (IOException | RuntimeException | Error e) {
+			if (channel != null) channel.close();
+			localLock.unlock();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (channel != null) {
+				//The lock file is left behind, deleting it could let a waiting process lock a file no-one else will see
+				try {
+					fileLock.release();
+				} finally {
+					channel.close();
+				}
+			}
+		} finally {
+			localLock.unlock();
+		}
+	}
+}
@@ -24,9 +24,6 @@
 
 package net.fabricmc.loom.util;
 
-import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 
@@ -35,23 +32,77 @@ import java.io.IOException;
 
 public class Checksum {
 	private static final Logger log = Logging.getLogger(Checksum.class);
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
 
 	public static boolean equals(File file, String checksum) {
 		if (file == null) {
 			return false;
 		}
 		try {
-			//noinspection deprecation
-			HashCode hash = Files.asByteSource(file).hash(Hashing.sha1());
-			StringBuilder builder = new StringBuilder();
-			for (Byte hashBytes : hash.asBytes()) {
-				builder.append(Integer.toString((hashBytes & 0xFF) + 0x100, 16).substring(1));
+			byte[] hash = FileHashCache.INSTANCE.sha1(file);
+			boolean matches = matches(hash, checksum);
+			if (log.isDebugEnabled()) {
+				log.debug("Checksum check: '" + appendHex(hash, new StringBuilder(hash.length * 2)) + "' == '" + checksum + "'?");
 			}
-			log.debug("Checksum check: '" + builder.toString() + "' == '" + checksum + "'?");
-			return builder.toString().equals(checksum);
+			return matches;
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return false;
 	}
+
+	/**
+	 * Check whether the given hash has the given hex representation, ignoring case
+	 *
+	 * @param hash The hash to check
+	 * @param hex The expected hash in hex
+	 *
+	 * @return Whether the hash matches
+	 */
+	public static boolean matches(byte[] hash, CharSequence hex) {
+		if (hex == null || hex.length() != hash.length * 2) return false;
+
+		for (int i = 0, j = 0; i < hash.length; i++) {
+			if (HEX[(hash[i] >> 4) & 0xF] != Character.toLowerCase(hex.charAt(j++))) return false;
+			if (HEX[hash[i] & 0xF] != Character.toLowerCase(hex.charAt(j++))) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Write the given hash out in lowercase hex to the end of the given builder
+	 *
+	 * @param hash The hash to write out
+	 * @param builder The builder to append to
+	 *
+	 * @return The given builder
+	 */
+	public static StringBuilder appendHex(byte[] hash, StringBuilder builder) {
+		for (byte b : hash) {
+			builder.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+		}
+
+		return builder;
+	}
+
+	static boolean isSHA1(String hex) {
+		if (hex.length() != 40) return false;
+
+		for (int i = 0; i < hex.length(); i++) {
+			if (Character.digit(hex.charAt(i), 16) < 0) return false;
+		}
+
+		return true;
+	}
+
+	static byte[] fromHex(String hex) {
+		byte[] out = new byte[hex.length() / 2];
+
+		for (int i = 0; i < out.length; i++) {
+			out[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4) | Character.digit(hex.charAt(i * 2 + 1), 16));
+		}
+
+		return out;
+	}
 }
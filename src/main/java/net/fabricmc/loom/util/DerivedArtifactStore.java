@@ -0,0 +1,334 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps files derived from other files (such as the merged and remapped Minecraft jars) by a fingerprint of everything
+ * that went into making them. The familiar version named files in the user cache are then only ever links to the
+ * entry for the inputs they are currently meant to come from, so changed inputs can never leave a stale file in use,
+ * and inputs seen before (under any name) never have to be processed again.
+ *
+ * <p>Entries are looked for in the user's own store first, then in the optional shared store. The shared store is
+ * only ever read from, so it can be populated once (for example by copying in a user's store) and then used by every
+ * user on a build machine without needing write access to it.
+ *
+ * <p>Entries in the user's own store which go unused for a month are {@link #prune() pruned} at the end of a build,
+ * and <code>cleanLoomBinaries</code> {@link #clear() clears} the store completely.
+ */
+public class DerivedArtifactStore {
+	/** Bump whenever how any file is derived changes, so that older entries stop being used */
+	private static final int FORMAT_VERSION = 2;
+	/** Entries which haven't been used in this long are removed when the store is {@link #prune() pruned} */
+	private static final long MAX_UNUSED = TimeUnit.DAYS.toMillis(30);
+	/** How often entries record being used, and the store is pruned */
+	private static final long USE_INTERVAL = TimeUnit.DAYS.toMillis(1);
+	private static String loomBuild;
+
+	private final File store;
+	private final File shared;
+	private final FileLinker linker = new FileLinker();
+
+	public DerivedArtifactStore(File store, File shared) {
+		this.store = store;
+		this.shared = shared;
+	}
+
+	/**
+	 * Work out the fingerprint of the given inputs, files are included by their contents rather than their names
+	 *
+	 * @param inputs The files, hashes (as <code>byte[]</code>s) and settings which decide what is derived
+	 *
+	 * @return The fingerprint to store the derived file under
+	 *
+	 * @throws IOException If an exception occurs hashing any of the input files
+	 */
+	public static String fingerprint(Object... inputs) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform should support SHA-1", e);
+		}
+
+		update(digest, getLoomBuild().getBytes(StandardCharsets.UTF_8));
+		for (Object input : inputs) {
+			if (input instanceof File) {
+				update(digest, FileHashCache.INSTANCE.sha1((File) input));
+			} else if (input instanceof byte[]) {
+				update(digest, (byte[]) input);
+			} else {
+				update(digest, String.valueOf(input).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		return Checksum.appendHex(digest.digest(), new StringBuilder(40)).toString();
+	}
+
+	/**
+	 * Identify the build of Loom which is running, so that changes to how files are derived change their fingerprints
+	 * even when the version number doesn't (such as between snapshots, or when Loom is an included build)
+	 */
+	private static synchronized String getLoomBuild() throws IOException {
+		if (loomBuild == null) {
+			StringBuilder build = new StringBuilder();
+			build.append(FORMAT_VERSION).append(' ').append(DerivedArtifactStore.class.getPackage().getImplementationVersion());
+
+			File location;
+			try {
+				location = new File(DerivedArtifactStore.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			} catch (URISyntaxException | RuntimeException e) {
+				location = null; //Hopefully the format version has been bumped then
+			}
+
+			if (location != null && location.isFile()) {
+				Checksum.appendHex(FileHashCache.INSTANCE.sha1(location), build.append(' '));
+			} else if (location != null && location.isDirectory()) {
+				//Running straight from compiled classes, so every one of them matters
+				try (Stream<Path> files = Files.walk(location.toPath())) {
+					for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+						Checksum.appendHex(FileHashCache.INSTANCE.sha1(file.toFile()), build.append(' '));
+					}
+				}
+			}
+
+			loomBuild = build.toString();
+		}
+
+		return loomBuild;
+	}
+
+	private static void update(MessageDigest digest, byte[] input) {
+		//Prefix each input with its length so the boundaries between them can't shift
+		digest.update(new byte[] {(byte) (input.length >>> 24), (byte) (input.length >>> 16), (byte) (input.length >>> 8), (byte) input.length});
+		digest.update(input);
+	}
+
+	private static File getEntry(File root, String kind, String fingerprint, String extension) {
+		return new File(root, kind + '-' + fingerprint + '.' + extension);
+	}
+
+	/**
+	 * Get the stored jar for the given fingerprint, for use in place without linking it anywhere
+	 *
+	 * @param kind What sort of jar is wanted, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the jar should come from
+	 *
+	 * @return The stored jar, or <code>null</code> if there isn't one
+	 */
+	public File get(String kind, String fingerprint) {
+		return get(kind, fingerprint, "jar");
+	}
+
+	/**
+	 * Get the stored entry for the given fingerprint, for use in place without linking it anywhere
+	 *
+	 * @param kind What sort of file is wanted, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the file should come from
+	 * @param extension The extension the file has, such as <code>jar</code>
+	 *
+	 * @return The stored file, or <code>null</code> if there isn't one
+	 */
+	public File get(String kind, String fingerprint, String extension) {
+		File entry = getEntry(store, kind, fingerprint, extension);
+		if (entry.exists()) {
+			markUsed(entry);
+			return entry;
+		}
+
+		if (shared != null) {
+			entry = getEntry(shared, kind, fingerprint, extension);
+			if (entry.exists()) return entry;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Make the given jar the stored entry for the given fingerprint, if there is one
+	 *
+	 * @param kind What sort of jar is wanted, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the jar should come from
+	 * @param target The jar to fill
+	 *
+	 * @return Whether the target now has the stored contents, if not it needs deriving from scratch
+	 *
+	 * @throws IOException If an exception occurs linking the target
+	 */
+	public boolean fetch(String kind, String fingerprint, File target) throws IOException {
+		return fetch(kind, fingerprint, "jar", target);
+	}
+
+	/**
+	 * Make the given file the stored entry for the given fingerprint, if there is one
+	 *
+	 * @param kind What sort of file is wanted, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the file should come from
+	 * @param extension The extension the file has, such as <code>jar</code>
+	 * @param target The file to fill
+	 *
+	 * @return Whether the target now has the stored contents, if not it needs deriving from scratch
+	 *
+	 * @throws IOException If an exception occurs linking the target
+	 */
+	public boolean fetch(String kind, String fingerprint, String extension, File target) throws IOException {
+		File entry = get(kind, fingerprint, extension);
+		if (entry == null) return false;
+
+		if (!FileLinker.isLinked(entry.toPath(), target.toPath())) {
+			linker.link(entry.toPath(), target.toPath());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Store the given freshly derived jar under the given fingerprint, leaving the jar as a link to the stored entry
+	 *
+	 * @param kind What sort of jar it is, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the jar came from
+	 * @param source The jar to store
+	 *
+	 * @return The stored file
+	 *
+	 * @throws IOException If an exception occurs storing the file
+	 */
+	public File put(String kind, String fingerprint, File source) throws IOException {
+		return put(kind, fingerprint, "jar", source);
+	}
+
+	/**
+	 * Store the given freshly derived file under the given fingerprint, leaving the file as a link to the stored entry
+	 *
+	 * @param kind What sort of file it is, such as <code>merged</code>
+	 * @param fingerprint The {@link #fingerprint(Object...) fingerprint} of the inputs the file came from
+	 * @param extension The extension the file has, such as <code>jar</code>
+	 * @param source The file to store
+	 *
+	 * @return The stored file
+	 *
+	 * @throws IOException If an exception occurs storing the file
+	 */
+	public File put(String kind, String fingerprint, String extension, File source) throws IOException {
+		if (!store.exists()) store.mkdirs();
+		File entry = getEntry(store, kind, fingerprint, extension);
+
+		Path temp = Files.createTempFile(store.toPath(), entry.getName(), ".tmp");
+		try {
+			Files.move(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING); //Only a rename if on the same file system
+
+			try {
+				Files.move(temp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		linker.link(entry.toPath(), source.toPath());
+		markUsed(entry);
+		return entry;
+	}
+
+	/**
+	 * Entries are often linked to, so their own modification times are left alone and a marker file next to each is
+	 * touched instead. Only done once a day so that using an entry doesn't always mean writing to the disk.
+	 */
+	private static void markUsed(File entry) {
+		File marker = new File(entry.getPath() + ".used");
+		long now = System.currentTimeMillis();
+
+		try {
+			if (!marker.exists()) {
+				Files.createFile(marker.toPath());
+			} else if (now - marker.lastModified() > USE_INTERVAL) {
+				marker.setLastModified(now);
+			}
+		} catch (IOException e) {
+			//Not a big problem, the entry just might be pruned sooner than it should be
+		}
+	}
+
+	/**
+	 * Remove the entries from the user's own store which haven't been used in the last month. Files already linked to
+	 * a removed entry keep working if they are hard links or copies, otherwise they will be derived again when next
+	 * needed. Only does anything once a day, so is cheap to call often.
+	 *
+	 * @return The number of entries removed
+	 */
+	public int prune() {
+		File lastPruned = new File(store, "last-pruned");
+		long now = System.currentTimeMillis();
+		if (!store.isDirectory() || now - lastPruned.lastModified() < USE_INTERVAL) return 0;
+
+		try {
+			if (!lastPruned.exists()) Files.createFile(lastPruned.toPath());
+			lastPruned.setLastModified(now);
+		} catch (IOException e) {
+			return 0; //Something else is wrong with the store, best leave it alone
+		}
+
+		int removed = 0;
+		File[] entries = store.listFiles((dir, name) -> !name.endsWith(".used") && !name.equals(lastPruned.getName()));
+		if (entries == null) return 0;
+
+		for (File entry : entries) {
+			File marker = new File(entry.getPath() + ".used");
+			long lastUsed = Math.max(entry.lastModified(), marker.lastModified());
+
+			if (now - lastUsed > MAX_UNUSED && entry.delete()) {
+				marker.delete();
+				removed++;
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Remove every entry from the user's own store, the shared store is never touched
+	 */
+	public void clear() {
+		File[] files = store.listFiles();
+		if (files == null) return;
+
+		for (File file : files) {
+			if (file.isFile()) file.delete();
+		}
+	}
+}
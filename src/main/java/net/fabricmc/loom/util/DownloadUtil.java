@@ -24,19 +24,43 @@
 package net.fabricmc.loom.util;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
+import com.google.common.hash.HashCode;
 import com.google.common.io.Files;
 
 public class DownloadUtil {
+	/** The content encodings which {@link #decode(HttpURLConnection, InputStream)} can decode */
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+	/** How long to wait for a connection or the next bit of a response before giving up, so stalled downloads fail and can be retried */
+	private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+
 	/**
 	 * Download from the given {@link URL} to the given {@link File} so long as there are differences between them
 	 *
@@ -61,7 +85,12 @@ public class DownloadUtil {
 	 * @throws IOException If an exception occurs during the process
 	 */
 	public static void downloadIfChanged(URL from, File to, Logger logger, boolean quiet) throws IOException {
-		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
+		if ("file".equals(from.getProtocol())) {
+			copyIfChanged(toFile(from), to, logger, quiet);
+			return;
+		}
+
+		HttpURLConnection connection = openConnection(from);
 
 		//If the output already exists we'll use it's last modified time
 		if (to.exists()) connection.setIfModifiedSince(to.lastModified());
@@ -70,8 +99,8 @@ public class DownloadUtil {
 		String etag = loadETag(to, logger);
 		if (etag != null) connection.setRequestProperty("If-None-Match", etag);
 
-		//We want to download gzip compressed stuff
-		connection.setRequestProperty("Accept-Encoding", "gzip");
+		//We want to download compressed stuff
+		connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
 
 		//We shouldn't need to set a user agent, but it's here just in case
 		//connection.setRequestProperty("User-Agent", null);
@@ -82,27 +111,340 @@ public class DownloadUtil {
 		int code = connection.getResponseCode();
 		if ((code < 200 || code > 299) && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
 			//Didn't get what we expected
-			throw new IOException(connection.getResponseMessage());
+			String message = connection.getResponseMessage();
+			discard(connection.getErrorStream());
+			throw new HttpStatusException(from, code, message);
 		}
 
 		long modifyTime = connection.getHeaderFieldDate("Last-Modified", -1);
 		if (to.exists() && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && to.lastModified() >= modifyTime)) {
 			if (!quiet) logger.info("'{}' Not Modified, skipping.", to);
+			discard(connection.getInputStream());
+			markChecked(to);
 			return; //What we've got is already fine
 		}
 
 		long contentLength = connection.getContentLengthLong();
 		if (!quiet && contentLength >= 0) logger.info("'{}' Changed, downloading {}", to, toNiceSize(contentLength));
 
-		try {//Try download to the output
-			FileUtils.copyInputStreamToFile(connection.getInputStream(), to);
+		File part = getPartFile(to);
+		CountingInputStream transferred = new CountingInputStream(connection.getInputStream());
+		long read;
+		try (InputStream in = decode(connection, transferred); OutputStream out = FileUtils.openOutputStream(part)) {
+			//Try download to the side, so a failed download never replaces what was there
+			read = IOUtils.copyLarge(in, out);
 		} catch (IOException e) {
-			to.delete(); //Probably isn't good if it fails to copy/save
+			part.delete(); //Probably isn't good if it fails to copy/save
 			throw e;
 		}
 
+		logTransfer(to, read, transferred, logger, quiet);
+		publish(connection, part, to, logger, quiet);
+		markChecked(to);
+	}
+
+	/**
+	 * Check whether the given {@link File} was {@link #downloadIfChanged(URL, File, Logger) downloaded or checked} within the given time,
+	 * in which case it can be presumed to still be up to date without asking the server
+	 *
+	 * @param file The file to check
+	 * @param ttl How long a check lasts for in milliseconds, anything below <code>1</code> means it should always be checked again
+	 *
+	 * @return Whether the file was checked recently enough to skip checking it again
+	 */
+	public static boolean isFresh(File file, long ttl) {
+		if (ttl <= 0 || !file.exists()) return false;
+
+		File checkFile = getCheckedFile(file);
+		if (!checkFile.exists()) return false;
+
+		try {
+			long checked = Long.parseLong(Files.asCharSource(checkFile, StandardCharsets.UTF_8).read().trim());
+			long age = System.currentTimeMillis() - checked;
+			return age >= 0 && age < ttl; //If the clock has gone backwards it's hard to know how old it is
+		} catch (IOException | NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Record that the given file has just been checked to be up to date, for {@link #isFresh(File, long)}
+	 *
+	 * @param file The file which was checked
+	 */
+	private static void markChecked(File file) {
+		File checkFile = getCheckedFile(file);
+
+		try {
+			Files.asCharSink(checkFile, StandardCharsets.UTF_8).write(Long.toString(System.currentTimeMillis()));
+		} catch (IOException e) {
+			checkFile.delete(); //Not the end of the world, it'll just be checked again next time
+		}
+	}
+
+	/**
+	 * Download from the given {@link URL} to the given {@link File}, checking the download against the given size and SHA-1 as it is saved.
+	 * The file is only replaced once the whole download has been checked, so a partial or corrupt download is never left in its place.
+	 * If an earlier attempt was interrupted, the rest of it is requested with a <code>Range</code> request so long as the server
+	 * gave a strong ETag or Last-Modified date to check the file hasn't changed since.
+	 *
+	 * @param from The URL of the file to be downloaded
+	 * @param to The destination to be saved to, replaced if it already exists
+	 * @param sha1 The SHA-1 the download is expected to have
+	 * @param size The size in bytes the download is expected to have, or anything below <code>1</code> if unknown
+	 * @param logger The logger to print information to, typically from {@link Project#getLogger()}
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If an exception occurs during the process, or the download doesn't match the given size or SHA-1
+	 */
+	public static void downloadVerified(URL from, File to, String sha1, long size, Logger logger, boolean quiet) throws IOException {
+		if ("file".equals(from.getProtocol())) {
+			copyVerified(toFile(from), to, sha1, size, logger, quiet);
+			return;
+		}
+
+		File part = getPartFile(to);
+		HttpURLConnection connection = openConnection(from);
+
+		//If an earlier download was interrupted, try pick up where it left off
+		long resumeFrom = 0;
+		String validator = part.exists() ? loadETag(part, logger) : null;
+		if (validator != null && part.length() > 0 && (size <= 0 || part.length() < size)) {
+			resumeFrom = part.length();
+			connection.setRequestProperty("Range", "bytes=" + resumeFrom + '-');
+			//Only get the rest if it's still the same file, otherwise the server will send everything again
+			connection.setRequestProperty("If-Range", validator);
+			//Ranges are of the encoded bytes, so they only line up with what we've saved if nothing is encoded
+			connection.setRequestProperty("Accept-Encoding", "identity");
+		} else {
+			connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+		}
+
+		//Try make the connection, it will hang here if the connection is bad
+		connection.connect();
+
+		int code = connection.getResponseCode();
+		if (code == 416 && resumeFrom > 0) {
+			//The server doesn't like the range we've asked for, the partial download can't be any good
+			discard(connection.getErrorStream());
+			deletePart(part);
+			downloadVerified(from, to, sha1, size, logger, quiet);
+			return;
+		}
+
+		if (code < 200 || code > 299) {
+			//Didn't get what we expected
+			String message = connection.getResponseMessage();
+			discard(connection.getErrorStream());
+			throw new HttpStatusException(from, code, message);
+		}
+
+		MessageDigest digest = sha1Digest();
+		boolean resuming = code == HttpURLConnection.HTTP_PARTIAL && resumeFrom > 0 && isContentRangeFrom(connection, resumeFrom);
+		if (resuming) {
+			//The hash has to cover what we already had too
+			try (InputStream in = new DigestInputStream(new FileInputStream(part), digest)) {
+				IOUtils.skip(in, Long.MAX_VALUE);
+			}
+
+			if (!quiet) logger.info("'{}' Resuming download from {}", to, toNiceSize(resumeFrom));
+		} else {
+			if (code == HttpURLConnection.HTTP_PARTIAL) {
+				//We never asked for this range, best not trust any of it
+				discard(connection.getInputStream());
+				deletePart(part);
+				throw new IOException("Unexpected partial response from " + from);
+			}
+
+			resumeFrom = 0;
+			long contentLength = size > 0 ? size : connection.getContentLengthLong();
+			if (!quiet && contentLength >= 0) logger.info("'{}' Changed, downloading {}", to, toNiceSize(contentLength));
+		}
+
+		//Remember what we're downloading, so if this is interrupted the next attempt knows whether it can carry on
+		String partValidator = getResumeValidator(connection, code);
+		if (partValidator != null) {
+			saveETag(part, partValidator, logger);
+		} else {
+			getETagFile(part).delete();
+		}
+
+		long read;
+		CountingInputStream transferred = new CountingInputStream(connection.getInputStream());
+		try (InputStream in = new DigestInputStream(decode(connection, transferred), digest); OutputStream out = FileUtils.openOutputStream(part, resuming)) {
+			read = resumeFrom + IOUtils.copyLarge(in, out);
+		} catch (IOException e) {
+			//Leave the partial download (if it can be resumed) for next time
+			if (partValidator == null) deletePart(part);
+			throw e;
+		}
+
+		logTransfer(to, read - resumeFrom, transferred, logger, quiet);
+		if (size > 0 && read != size) {
+			deletePart(part);
+			throw new CorruptDownloadException("Expected " + size + " bytes from " + from + " but got " + read);
+		}
+
+		byte[] hash = digest.digest();
+		if (!Checksum.matches(hash, sha1)) {
+			deletePart(part);
+			throw new CorruptDownloadException("Checksum mismatch downloading " + from + ": expected " + sha1 + " but got " + HashCode.fromBytes(hash));
+		}
+
+		getETagFile(part).delete();
+		publish(connection, part, to, logger, quiet);
+		//Save having to read the whole file again the next time it is checked
+		FileHashCache.INSTANCE.put(to, hash);
+	}
+
+	/**
+	 * Get the strong ETag or Last-Modified date of the given response, which can be sent back as an <code>If-Range</code> header
+	 *
+	 * @param connection The connection to get the validator from
+	 * @param code The response code the connection got
+	 *
+	 * @return The validator, or <code>null</code> if there isn't one which can be used to resume the download
+	 */
+	private static String getResumeValidator(HttpURLConnection connection, int code) {
+		if (!isIdentity(connection.getContentEncoding())) {
+			return null; //What's been saved is decoded, so it won't line up with ranges of what was sent
+		}
+
+		if (!"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")) && code != HttpURLConnection.HTTP_PARTIAL) {
+			return null; //The server has said nothing about supporting ranges
+		}
+
+		String eTag = connection.getHeaderField("ETag");
+		if (eTag != null && !eTag.startsWith("W/")) return eTag; //Weak ETags can't be used for ranges
+
+		return connection.getHeaderField("Last-Modified");
+	}
+
+	private static HttpURLConnection openConnection(URL from) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		return connection;
+	}
+
+	/**
+	 * Wrap the given response body to decode it according to the response's <code>Content-Encoding</code>
+	 *
+	 * @param connection The connection the response is from
+	 * @param in The response body, as it was sent
+	 *
+	 * @return The decoded response body
+	 *
+	 * @throws IOException If the response has an encoding which isn't supported
+	 */
+	private static InputStream decode(HttpURLConnection connection, InputStream in) throws IOException {
+		String encoding = connection.getContentEncoding();
+		if (isIdentity(encoding)) return in;
+
+		switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(in, 8192);
+
+		case "deflate": {
+			//Deflate is meant to come wrapped in zlib, but some servers send it raw
+			PushbackInputStream pushback = new PushbackInputStream(in, 2);
+			int first = pushback.read();
+			int second = pushback.read();
+			if (second >= 0) pushback.unread(second);
+			if (first >= 0) pushback.unread(first);
+
+			boolean zlib = (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+			Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(pushback, inflater, 8192) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+		}
+
+		default:
+			discard(in);
+			throw new IOException("Unsupported Content-Encoding from " + connection.getURL() + ": " + encoding);
+		}
+	}
+
+	private static boolean isIdentity(String encoding) {
+		return encoding == null || encoding.trim().isEmpty() || "identity".equalsIgnoreCase(encoding.trim());
+	}
+
+	/**
+	 * Log how much was downloaded, along with how much was actually sent if the response was compressed
+	 *
+	 * @param to The destination the download is for
+	 * @param decoded The number of bytes downloaded once decoded
+	 * @param transferred The response body as it was sent, which has been fully read
+	 * @param logger The logger to print information to
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 */
+	private static void logTransfer(File to, long decoded, CountingInputStream transferred, Logger logger, boolean quiet) {
+		if (quiet) return;
+
+		if (transferred.getByteCount() != decoded) {
+			logger.info("'{}' Downloaded {} ({} transferred)", to, toNiceSize(decoded), toNiceSize(transferred.getByteCount()));
+		} else {
+			logger.info("'{}' Downloaded {}", to, toNiceSize(decoded));
+		}
+	}
+
+	/**
+	 * Checks the given partial response starts where we asked it to
+	 *
+	 * @param connection The connection the partial response is from
+	 * @param start The byte the response should start from
+	 *
+	 * @return Whether the <code>Content-Range</code> header starts at the given position
+	 */
+	private static boolean isContentRangeFrom(HttpURLConnection connection, long start) {
+		String range = connection.getHeaderField("Content-Range");
+		return range != null && range.trim().startsWith("bytes " + start + '-');
+	}
+
+	/**
+	 * Delete a partial download along with the validator saved to resume it
+	 *
+	 * @param part The partial download
+	 */
+	private static void deletePart(File part) {
+		part.delete();
+		getETagFile(part).delete();
+	}
+
+	private static MessageDigest sha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform should support SHA-1", e);
+		}
+	}
+
+	/**
+	 * Move a finished download into place, along with anything worth keeping from the response's headers
+	 *
+	 * @param connection The connection the download came from
+	 * @param part The finished download
+	 * @param to The destination the download is for
+	 * @param logger The logger to print information to
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If the download can't be moved into place
+	 */
+	private static void publish(HttpURLConnection connection, File part, File to, Logger logger, boolean quiet) throws IOException {
 		//Set the modify time to match the server's (if we know it)
-		if (modifyTime > 0) to.setLastModified(modifyTime);
+		long modifyTime = connection.getHeaderFieldDate("Last-Modified", -1);
+		if (modifyTime > 0) part.setLastModified(modifyTime);
+
+		moveIntoPlace(part, to);
 
 		//Save the ETag (if we know it)
 		String eTag = connection.getHeaderField("ETag");
@@ -114,6 +456,116 @@ public class DownloadUtil {
 		}
 	}
 
+	/**
+	 * Replace the given file with the given finished download in one go, so nothing ever sees half of either
+	 *
+	 * @param part The finished download
+	 * @param to The destination the download is for
+	 *
+	 * @throws IOException If the download can't be moved into place
+	 */
+	private static void moveIntoPlace(File part, File to) throws IOException {
+		try {
+			java.nio.file.Files.move(part.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			java.nio.file.Files.move(part.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			part.delete();
+			throw e;
+		}
+	}
+
+	private static File toFile(URL url) throws IOException {
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("Invalid file URL: " + url, e);
+		}
+	}
+
+	/**
+	 * Copy the given {@link File} from a mirror on disk to the given {@link File} so long as their sizes or modification times are different
+	 *
+	 * @param from The file to be copied
+	 * @param to The destination to be saved to, and compared against if it exists
+	 * @param logger The logger to print information to
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If the file is missing or an exception occurs copying it
+	 */
+	private static void copyIfChanged(File from, File to, Logger logger, boolean quiet) throws IOException {
+		if (!from.isFile()) throw new FileNotFoundException("Missing from mirror: " + from);
+
+		if (to.exists() && to.length() == from.length() && to.lastModified() == from.lastModified()) {
+			if (!quiet) logger.info("'{}' Not Modified, skipping.", to);
+			markChecked(to);
+			return;
+		}
+
+		if (!quiet) logger.info("'{}' Changed, copying {} from mirror", to, toNiceSize(from.length()));
+		File part = getPartFile(to);
+		try {
+			FileUtils.copyFile(from, part, true);
+		} catch (IOException e) {
+			part.delete();
+			throw e;
+		}
+
+		moveIntoPlace(part, to);
+		getETagFile(to).delete(); //Any ETag will be for what was downloaded before
+		markChecked(to);
+	}
+
+	/**
+	 * Copy the given {@link File} from a mirror on disk to the given {@link File}, checking it against the given size and SHA-1 as it is copied
+	 *
+	 * @param from The file to be copied
+	 * @param to The destination to be saved to, replaced if it already exists
+	 * @param sha1 The SHA-1 the file is expected to have
+	 * @param size The size in bytes the file is expected to have, or anything below <code>1</code> if unknown
+	 * @param logger The logger to print information to
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If the file is missing, an exception occurs copying it, or it doesn't match the given size or SHA-1
+	 */
+	private static void copyVerified(File from, File to, String sha1, long size, Logger logger, boolean quiet) throws IOException {
+		if (!from.isFile()) throw new FileNotFoundException("Missing from mirror: " + from);
+		if (size > 0 && from.length() != size) throw new IOException("Expected " + size + " bytes in " + from + " but found " + from.length());
+
+		if (!quiet) logger.info("'{}' Copying {} from mirror", to, toNiceSize(from.length()));
+		File part = getPartFile(to);
+		MessageDigest digest = sha1Digest();
+		try (InputStream in = new DigestInputStream(new FileInputStream(from), digest); OutputStream out = FileUtils.openOutputStream(part)) {
+			IOUtils.copyLarge(in, out);
+		} catch (IOException e) {
+			deletePart(part);
+			throw e;
+		}
+
+		byte[] hash = digest.digest();
+		if (!Checksum.matches(hash, sha1)) {
+			deletePart(part);
+			throw new IOException("Checksum mismatch copying " + from + ": expected " + sha1 + " but got " + HashCode.fromBytes(hash));
+		}
+
+		part.setLastModified(from.lastModified());
+		getETagFile(part).delete();
+		moveIntoPlace(part, to);
+		getETagFile(to).delete();
+		FileHashCache.INSTANCE.put(to, hash);
+	}
+
+	/**
+	 * Creates a new file in the same directory as the given file with <code>.part</code> on the end of the name
+	 *
+	 * @param file The file to produce the partial download for
+	 *
+	 * @return The (uncreated) partial download file for the given file
+	 */
+	private static File getPartFile(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".part");
+	}
+
 	/**
 	 * Creates a new file in the same directory as the given file with <code>.etag</code> on the end of the name
 	 *
@@ -125,6 +577,17 @@ public class DownloadUtil {
 		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".etag");
 	}
 
+	/**
+	 * Creates a new file in the same directory as the given file with <code>.checked</code> on the end of the name
+	 *
+	 * @param file The file to produce the last checked time for
+	 *
+	 * @return The (uncreated) last checked time file for the given file
+	 */
+	private static File getCheckedFile(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".checked");
+	}
+
 	/**
 	 * Attempt to load an ETag for the given file, if it exists
 	 *
@@ -162,6 +625,22 @@ public class DownloadUtil {
 		}
 	}
 
+	/**
+	 * Close a response body we don't want, which lets the connection go back into the keep-alive cache
+	 * (the JDK will drain what's left first, so long as there isn't too much of it)
+	 *
+	 * @param stream The response stream to throw away, can be <code>null</code>
+	 */
+	private static void discard(InputStream stream) {
+		if (stream == null) return;
+
+		try {
+			stream.close();
+		} catch (IOException e) {
+			//Not much else to be done, the connection just won't be reused
+		}
+	}
+
 	/**
 	 * Format the given number of bytes as a more human readable string
 	 *
@@ -182,7 +661,32 @@ public class DownloadUtil {
 	}
 
 	/**
-	 * Delete the file along with the corresponding ETag, if it exists.
+	 * Thrown when a server responds with a status code other than the ones which were expected
+	 */
+	public static class HttpStatusException extends IOException {
+		private final int statusCode;
+
+		public HttpStatusException(URL from, int statusCode, String message) {
+			super(statusCode + " " + message + " from " + from);
+			this.statusCode = statusCode;
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+	}
+
+	/**
+	 * Thrown when a download doesn't match the size or SHA-1 it was expected to have, which usually means it was damaged on the way
+	 */
+	public static class CorruptDownloadException extends IOException {
+		public CorruptDownloadException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Delete the file along with the corresponding ETag, last checked time and partial download, if they exist.
 	 *
 	 * @param file The file to delete.
 	 */
@@ -191,6 +695,9 @@ public class DownloadUtil {
 			file.delete();
 		}
 
+		deletePart(getPartFile(file));
+		getCheckedFile(file).delete();
+
 		File etagFile = getETagFile(file);
 		if (etagFile.exists()) {
 			etagFile.delete();
@@ -0,0 +1,205 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.hash.Hashing;
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the SHA-1 of files along with the size, modification time and (where the file system has one) file key
+ * they had when they were hashed. So long as none of those have changed the remembered hash is used rather than
+ * reading the whole file again.
+ *
+ * <p>There is only ever one {@link #INSTANCE}, so the hashes are shared between every project and every build the
+ * Gradle daemon runs. They are also saved to the user cache, so a fresh daemon doesn't have to start from scratch.
+ *
+ * <p>Safe to use from multiple threads at once.
+ */
+public final class FileHashCache {
+	public static final FileHashCache INSTANCE = new FileHashCache();
+	private static final String HEADER = "loom-file-hashes v1";
+	/** Files modified this recently might be modified again without their modification time visibly changing */
+	private static final long RACY_WINDOW = TimeUnit.SECONDS.toMillis(2);
+
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+	private File store;
+	private volatile boolean changed;
+
+	private FileHashCache() {
+	}
+
+	/**
+	 * Load the hashes saved in the given file, if they haven't been loaded already
+	 *
+	 * @param store The file the hashes are kept in
+	 * @param logger The logger to print problems to
+	 */
+	public synchronized void load(File store, Logger logger) {
+		if (store.equals(this.store)) return;
+		this.store = store;
+		if (!store.exists()) return;
+
+		try (BufferedReader reader = Files.newBufferedReader(store.toPath(), StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) return;
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t");
+				if (parts.length != 5 || !Checksum.isSHA1(parts[4])) continue;
+
+				Path path = new File(parts[0]).toPath();
+				entries.putIfAbsent(path, new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3].isEmpty() ? null : parts[3], Checksum.fromHex(parts[4])));
+			}
+		} catch (IOException | NumberFormatException e) {
+			logger.warn("Error reading file hash cache '{}', files will be rehashed.", store);
+		}
+	}
+
+	/**
+	 * Get the SHA-1 of the given file, only reading it if it has changed since it was last hashed
+	 *
+	 * @param file The file to hash
+	 *
+	 * @return The SHA-1 of the file's current contents
+	 *
+	 * @throws IOException If the file is missing or an exception occurs reading it
+	 */
+	public byte[] sha1(File file) throws IOException {
+		Path path = file.getAbsoluteFile().toPath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		Entry entry = entries.get(path);
+		if (entry != null && entry.matches(attributes)) {
+			return entry.sha1;
+		}
+
+		//noinspection deprecation
+		byte[] sha1 = com.google.common.io.Files.asByteSource(file).hash(Hashing.sha1()).asBytes();
+		remember(path, attributes, sha1);
+		return sha1;
+	}
+
+	/**
+	 * Record the SHA-1 of a file which has been hashed by other means, such as whilst it was being downloaded
+	 *
+	 * @param file The file which was hashed
+	 * @param sha1 The SHA-1 of the file's current contents
+	 */
+	public void put(File file, byte[] sha1) {
+		Path path = file.getAbsoluteFile().toPath();
+
+		try {
+			remember(path, Files.readAttributes(path, BasicFileAttributes.class), sha1);
+		} catch (IOException e) {
+			entries.remove(path); //The file has gone missing again already, so there's nothing to remember
+		}
+	}
+
+	private void remember(Path path, BasicFileAttributes attributes, byte[] sha1) {
+		long modified = attributes.lastModifiedTime().toMillis();
+
+		if (System.currentTimeMillis() - modified < RACY_WINDOW) {
+			//A write straight after the hash could leave the size and time unchanged, so it's not safe to trust later
+			entries.remove(path);
+		} else {
+			entries.put(path, new Entry(attributes.size(), modified, Objects.toString(attributes.fileKey(), null), sha1));
+			changed = true;
+		}
+	}
+
+	/**
+	 * Write out the hashes of every file which still exists to the file they were loaded from
+	 *
+	 * @throws IOException If an exception occurs writing the hashes
+	 */
+	public synchronized void save() throws IOException {
+		if (store == null || !changed) return;
+
+		File parent = store.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) parent.mkdirs();
+
+		Path temp = Files.createTempFile(parent.toPath(), store.getName(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+
+				StringBuilder line = new StringBuilder();
+				for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+					if (!Files.exists(entry.getKey())) {
+						entries.remove(entry.getKey());
+						continue;
+					}
+
+					Entry value = entry.getValue();
+					line.setLength(0);
+					line.append(entry.getKey()).append('\t').append(value.size).append('\t').append(value.modified).append('\t');
+					if (value.fileKey != null) line.append(value.fileKey);
+					Checksum.appendHex(value.sha1, line.append('\t'));
+
+					writer.append(line);
+					writer.newLine();
+				}
+			}
+
+			Files.move(temp, store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			changed = false;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static class Entry {
+		final long size;
+		final long modified;
+		final String fileKey;
+		final byte[] sha1;
+
+		Entry(long size, long modified, String fileKey, byte[] sha1) {
+			this.size = size;
+			this.modified = modified;
+			this.fileKey = fileKey;
+			this.sha1 = sha1;
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis() && Objects.equals(fileKey, Objects.toString(attributes.fileKey(), null));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Fills files in one place from files elsewhere without copying them if possible. Hard links are tried first, then
+ * symbolic links, then finally a plain copy. Once a way of linking has failed it isn't tried again by the same linker,
+ * so linking thousands of files across file systems only pays for the failure once.
+ */
+public class FileLinker {
+	public enum Method {
+		HARD_LINK, SYMBOLIC_LINK, COPY
+	}
+
+	private volatile Method method = Method.HARD_LINK;
+
+	/**
+	 * Checks if the given target already has the contents of the given source, either by being a link to it or an
+	 * unmodified copy of it. Only suitable for content addressed sources, where a file's name decides its contents.
+	 *
+	 * @param source The file which should be linked to
+	 * @param target The file which should be a link
+	 *
+	 * @return Whether the target is already up to date
+	 */
+	public static boolean isLinked(Path source, Path target) {
+		try {
+			if (!Files.exists(target)) return false;
+			if (Files.isSameFile(source, target)) return true;
+
+			BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+			BasicFileAttributes targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+			return sourceAttributes.size() == targetAttributes.size() && sourceAttributes.lastModifiedTime().equals(targetAttributes.lastModifiedTime());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Make the given target have the same contents as the given source, replacing whatever is there currently
+	 *
+	 * @param source The file to be linked to
+	 * @param target The file to become a link to the source
+	 *
+	 * @return How the target was linked
+	 *
+	 * @throws IOException If the target couldn't even be copied
+	 */
+	public Method link(Path source, Path target) throws IOException {
+		Path parent = target.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		Files.deleteIfExists(target);
+
+		Method method = this.method;
+		switch (method) {
+		case HARD_LINK:
+			try {
+				Files.createLink(target, source);
+				return Method.HARD_LINK;
+			} catch (IOException | UnsupportedOperationException e) {
+				this.method = Method.SYMBOLIC_LINK;
+			}
+			//Fall through to try the next best thing
+		case SYMBOLIC_LINK:
+			try {
+				Files.createSymbolicLink(target, source.toAbsolutePath());
+				return Method.SYMBOLIC_LINK;
+			} catch (IOException | UnsupportedOperationException e) {
+				this.method = Method.COPY;
+			}
+			//Fall through to copying
+		case COPY:
+		default:
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			return Method.COPY;
+		}
+	}
+
+	/**
+	 * @return The best way of linking which hasn't failed yet
+	 */
+	public Method getMethod() {
+		return method;
+	}
+}
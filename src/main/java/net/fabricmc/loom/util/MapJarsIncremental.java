@@ -0,0 +1,426 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.io.ByteStreams;
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.providers.MappingsCache;
+import net.fabricmc.loom.providers.MappingsProvider;
+import net.fabricmc.loom.providers.MinecraftMappedProvider;
+import net.fabricmc.loom.util.mappings.TinyMappings;
+import net.fabricmc.tinyremapper.OutputConsumerPath;
+import net.fabricmc.tinyremapper.TinyRemapper;
+import org.gradle.api.Project;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Produces the mapped Minecraft jar for new mappings from the mapped jar of some older mappings, only remapping the
+ * classes which are actually affected by what changed between the two.
+ *
+ * <p>Intermediary names are unique across the whole game, so a class is affected exactly when its constant pool
+ * mentions the intermediary name of a class, field or method whose named name is different between the two mappings.
+ * That covers a class's own name, its members, anything it references (whether through its own or a super type) and
+ * any descriptors or signatures naming a renamed class. Every affected class is remapped again from the intermediary
+ * jar, whilst everything else is copied straight out of the old mapped jar.
+ */
+public class MapJarsIncremental {
+	private static final Pattern INTERMEDIARY_NAME = Pattern.compile("(?:class|field|method)_\\d+");
+
+	/**
+	 * Remember which mappings produced the given mapped jar, so it can be used to map future mappings from
+	 *
+	 * @param mappedJar The mapped jar which has just been produced
+	 * @param mappings The Tiny mappings it was mapped with
+	 *
+	 * @throws IOException If an exception occurs hashing the mappings or writing the record
+	 */
+	public static void recordMappings(File mappedJar, File mappings) throws IOException {
+		StringBuilder record = new StringBuilder(mappings.getAbsolutePath()).append('\t');
+		Checksum.appendHex(FileHashCache.INSTANCE.sha1(mappings), record);
+		Files.write(getRecord(mappedJar).toPath(), record.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static File getRecord(File mappedJar) {
+		return new File(mappedJar.getPath() + ".mappings");
+	}
+
+	/**
+	 * Try produce the mapped jar from an older one, leaving it missing if not possible
+	 *
+	 * @param mapProvider The provider of the mapped jar to produce
+	 * @param project The project to produce it for
+	 *
+	 * @return Whether the mapped jar was produced
+	 */
+	public boolean mapJar(MinecraftMappedProvider mapProvider, Project project) {
+		MappingsProvider mappingsProvider = project.getExtensions().getByType(LoomGradleExtension.class).getMappingsProvider();
+		File mappedJar = mapProvider.getMappedJar();
+
+		try {
+			File previousJar = findPrevious(mappedJar, mappingsProvider.mappingsName);
+			if (previousJar == null) return false;
+
+			String[] record = new String(Files.readAllBytes(getRecord(previousJar).toPath()), StandardCharsets.UTF_8).split("\t");
+			File previousMappings = new File(record[0]);
+			if (record.length != 2 || !previousMappings.exists() || !Checksum.matches(FileHashCache.INSTANCE.sha1(previousMappings), record[1])) {
+				return false; //Can't tell what the old jar was mapped with anymore
+			}
+
+			TinyMappings oldMappings = MappingsCache.INSTANCE.get(previousMappings.toPath());
+			TinyMappings newMappings = mappingsProvider.getMappings();
+			if (!hasNamespaces(oldMappings) || !hasNamespaces(newMappings)) return false;
+
+			Changes changes = new Changes(oldMappings, newMappings);
+
+			Path intermediaryJar = mapProvider.getIntermediaryJar().toPath();
+			Path dirtyJar = Files.createTempFile(mappedJar.getParentFile().toPath(), "dirty", ".jar");
+			Path cleanJar = Files.createTempFile(mappedJar.getParentFile().toPath(), "clean", ".jar");
+			Path remappedJar = mappedJar.toPath().resolveSibling(mappedJar.getName() + ".remapped");
+			Path output = Files.createTempFile(mappedJar.getParentFile().toPath(), mappedJar.getName(), ".tmp");
+
+			try {
+				Set<String> skip = new HashSet<>();
+				int total = splitClasses(intermediaryJar, changes, dirtyJar, cleanJar, skip);
+
+				if (skip.size() == total) return false; //Everything changed, there's nothing to be saved
+				project.getLogger().lifecycle(":remapping minecraft incrementally (" + skip.size() + " of " + total + " classes changed since " + previousJar.getName() + ")");
+
+				if (skip.isEmpty()) {
+					//Nothing the jar uses has changed, so it can be used as it is
+					Files.copy(previousJar.toPath(), output, StandardCopyOption.REPLACE_EXISTING);
+					Files.move(output, mappedJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					return true;
+				}
+
+				Path[] libraries = SkeletonClasspath.get(project, mapProvider.getMapperPaths().stream().map(File::toPath).collect(Collectors.toList()));
+				Path[] classpath = Stream.concat(Arrays.stream(libraries), Stream.of(cleanJar)).toArray(Path[]::new);
+				TinyRemapper remapper = TinyRemapper.newRemapper()
+						.withMappings(TinyRemapperMappingsHelper.create(newMappings, "intermediary", "named"))
+						.renameInvalidLocals(true)
+						.rebuildSourceFilenames(true)
+						.build();
+
+				Files.deleteIfExists(remappedJar);
+				try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(remappedJar).build()) {
+					remapper.readClassPath(classpath);
+					remapper.readInputs(dirtyJar);
+					remapper.apply(outputConsumer);
+				} finally {
+					remapper.finish();
+				}
+
+				merge(remappedJar, previousJar.toPath(), skip, output);
+				Files.move(output, mappedJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return true;
+			} finally {
+				Files.deleteIfExists(dirtyJar);
+				Files.deleteIfExists(cleanJar);
+				Files.deleteIfExists(remappedJar);
+				Files.deleteIfExists(output);
+			}
+		} catch (Exception e) {
+			project.getLogger().warn("Unable to remap minecraft incrementally, falling back to a full remap", e);
+			mappedJar.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Sort the classes of the intermediary jar into those affected by the given changes and those which aren't
+	 *
+	 * @param intermediaryJar The intermediary Minecraft jar
+	 * @param changes What changed between the mappings
+	 * @param dirtyJar Where to write the affected classes
+	 * @param cleanJar Where to write everything else
+	 * @param skip Filled with the entry names of the affected classes in the old mapped jar
+	 *
+	 * @return The total number of classes in the intermediary jar
+	 */
+	static int splitClasses(Path intermediaryJar, Changes changes, Path dirtyJar, Path cleanJar, Set<String> skip) throws IOException {
+		int total = 0;
+
+		try (ZipFile zip = new ZipFile(intermediaryJar.toFile());
+				ZipOutputStream dirty = new ZipOutputStream(Files.newOutputStream(dirtyJar));
+				ZipOutputStream clean = new ZipOutputStream(Files.newOutputStream(cleanJar))) {
+			for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+				ZipEntry entry = it.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+				total++;
+
+				byte[] bytes = readAll(zip, entry);
+				String name = entry.getName().substring(0, entry.getName().length() - 6);
+
+				if (changes.isAffected(bytes)) {
+					skip.add(changes.getOldName(name) + ".class");
+					write(dirty, entry.getName(), bytes);
+				} else {
+					write(clean, entry.getName(), bytes);
+				}
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Write the freshly remapped classes along with everything from the old mapped jar which wasn't remapped again
+	 *
+	 * @param remappedJar The classes which have been remapped again
+	 * @param previousJar The old mapped jar
+	 * @param skip The entries in the old mapped jar which have been remapped again
+	 * @param output Where to write the new mapped jar
+	 */
+	static void merge(Path remappedJar, Path previousJar, Set<String> skip, Path output) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output))) {
+			Set<String> written = new HashSet<>();
+
+			try (ZipFile remapped = new ZipFile(remappedJar.toFile())) {
+				for (Enumeration<? extends ZipEntry> it = remapped.entries(); it.hasMoreElements(); ) {
+					ZipEntry entry = it.nextElement();
+					if (entry.isDirectory() || !written.add(entry.getName())) continue;
+
+					write(out, entry.getName(), readAll(remapped, entry));
+				}
+			}
+
+			try (ZipFile previous = new ZipFile(previousJar.toFile())) {
+				for (Enumeration<? extends ZipEntry> it = previous.entries(); it.hasMoreElements(); ) {
+					ZipEntry entry = it.nextElement();
+					if (entry.isDirectory() || skip.contains(entry.getName()) || !written.add(entry.getName())) continue;
+
+					write(out, entry.getName(), readAll(previous, entry));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the most recently mapped jar for the same Minecraft version and mappings as the given jar is for
+	 */
+	private static File findPrevious(File mappedJar, String mappingsName) {
+		String name = mappedJar.getName();
+		int split = name.indexOf("-mapped-" + mappingsName + '-');
+		if (split < 0) return null;
+
+		String prefix = name.substring(0, split + 9 + mappingsName.length());
+		File[] candidates = mappedJar.getParentFile().listFiles(file -> file.getName().startsWith(prefix) && file.getName().endsWith(".jar")
+				&& !file.equals(mappedJar) && getRecord(file).exists());
+		if (candidates == null || candidates.length == 0) return null;
+
+		return Collections.max(Arrays.asList(candidates), (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+	}
+
+	private static boolean hasNamespaces(TinyMappings mappings) {
+		return mappings.getNamespaces().contains("intermediary") && mappings.getNamespaces().contains("named");
+	}
+
+	/**
+	 * Get the named name of every class, field and method keyed by its intermediary name
+	 */
+	private static Map<String, String> getNames(TinyMappings mappings) {
+		int from = mappings.getNamespaceId("intermediary");
+		int to = mappings.getNamespaceId("named");
+		Map<String, String> names = new HashMap<>((mappings.getClassCount() + mappings.getFieldCount() + mappings.getMethodCount()) * 4 / 3 + 1);
+
+		for (int i = 0, end = mappings.getClassCount(); i < end; i++) {
+			names.put("c\t" + mappings.getClassName(i, from), mappings.getClassName(i, to));
+		}
+
+		for (int i = 0, end = mappings.getFieldCount(); i < end; i++) {
+			names.put("f\t" + mappings.getFieldName(i, from) + '\t' + mappings.getFieldOwner(i, from) + '\t' + mappings.getFieldDesc(i, from), mappings.getFieldName(i, to));
+		}
+
+		for (int i = 0, end = mappings.getMethodCount(); i < end; i++) {
+			names.put("m\t" + mappings.getMethodName(i, from) + '\t' + mappings.getMethodOwner(i, from) + '\t' + mappings.getMethodDesc(i, from), mappings.getMethodName(i, to));
+		}
+
+		return names;
+	}
+
+	/**
+	 * Get the named name of the given intermediary class, inner classes without their own name follow their outer class
+	 */
+	private static String getClassName(Map<String, String> names, String name) {
+		String named = names.get("c\t" + name);
+		if (named != null) return named;
+
+		int split = name.lastIndexOf('$');
+		return split > 0 ? getClassName(names, name.substring(0, split)) + name.substring(split) : name;
+	}
+
+	/**
+	 * The intermediary names of everything which is named differently between two sets of mappings
+	 */
+	static class Changes {
+		final Map<String, String> oldNames;
+		/** Intermediary names which can be found as tokens, and anything else which has to be searched for */
+		final Set<String> changed = new HashSet<>(), changedOther = new HashSet<>();
+
+		Changes(TinyMappings oldMappings, TinyMappings newMappings) {
+			oldNames = getNames(oldMappings);
+			Map<String, String> newNames = getNames(newMappings);
+
+			for (String key : union(oldNames.keySet(), newNames.keySet())) {
+				if (!Objects.equals(oldNames.get(key), newNames.get(key))) {
+					String name = key.split("\t")[1]; //The intermediary name of whatever changed
+					if (key.startsWith("c")) name = name.substring(name.lastIndexOf('/') + 1);
+
+					if (INTERMEDIARY_NAME.matcher(name).matches()) {
+						changed.add(name);
+					} else {
+						changedOther.add(name);
+					}
+				}
+			}
+		}
+
+		boolean isAffected(byte[] clazz) throws IOException {
+			return MapJarsIncremental.isAffected(clazz, changed, changedOther);
+		}
+
+		/**
+		 * Get the name the given intermediary class had in the old mappings
+		 */
+		String getOldName(String name) {
+			return getClassName(oldNames, name);
+		}
+	}
+
+	private static <T> Set<T> union(Set<T> a, Set<T> b) {
+		Set<T> out = new HashSet<>(a);
+		out.addAll(b);
+		return out;
+	}
+
+	/**
+	 * Check whether any of the strings in the given class's constant pool mention any of the given changed names
+	 */
+	static boolean isAffected(byte[] clazz, Set<String> changed, Set<String> changedOther) throws IOException {
+		for (String string : readStrings(clazz)) {
+			for (Matcher matcher = INTERMEDIARY_NAME.matcher(string); matcher.find(); ) {
+				if (changed.contains(matcher.group())) return true;
+			}
+
+			for (String other : changedOther) {
+				if (string.contains(other)) return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Read all the UTF-8 entries out of the given class's constant pool
+	 */
+	static List<String> readStrings(byte[] clazz) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(clazz));
+		if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+		in.skipBytes(4); //Minor and major version
+
+		int count = in.readUnsignedShort();
+		List<String> strings = new ArrayList<>(count / 2);
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+
+			switch (tag) {
+			case 1: //Utf8
+				strings.add(in.readUTF());
+				break;
+
+			case 7: //Class
+			case 8: //String
+			case 16: //MethodType
+			case 19: //Module
+			case 20: //Package
+				in.skipBytes(2);
+				break;
+
+			case 15: //MethodHandle
+				in.skipBytes(3);
+				break;
+
+			case 3: //Integer
+			case 4: //Float
+			case 9: //Fieldref
+			case 10: //Methodref
+			case 11: //InterfaceMethodref
+			case 12: //NameAndType
+			case 17: //Dynamic
+			case 18: //InvokeDynamic
+				in.skipBytes(4);
+				break;
+
+			case 5: //Long
+			case 6: //Double
+				in.skipBytes(8);
+				i++; //Takes two slots
+				break;
+
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+
+		return strings;
+	}
+
+	private static byte[] readAll(ZipFile zip, ZipEntry entry) throws IOException {
+		try (InputStream in = zip.getInputStream(entry)) {
+			return ByteStreams.toByteArray(in);
+		}
+	}
+
+	private static void write(ZipOutputStream zip, String name, byte[] bytes) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(bytes);
+		zip.closeEntry();
+	}
+}
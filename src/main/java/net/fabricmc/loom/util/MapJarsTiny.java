@@ -25,10 +25,12 @@
 package net.fabricmc.loom.util;
 
 
+import com.google.common.base.Throwables;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.providers.MappingsProvider;
+import net.fabricmc.loom.util.mappings.TinyMappings;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
@@ -37,7 +39,13 @@ import org.gradle.api.Project;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MapJarsTiny {
 
@@ -47,35 +55,81 @@ public class MapJarsTiny {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
 
-		Path[] classpath = mapProvider.getMapperPaths().stream()
+		//Only the class hierarchy is needed from the libraries, which their skeletons have
+		Path[] classpath = SkeletonClasspath.get(project, mapProvider.getMapperPaths().stream()
 				.map(File::toPath)
-				.toArray(Path[]::new);
+				.collect(Collectors.toList()));
 
 		Path input = jarProvider.getMergedJar().toPath();
 		Path outputMapped = mapProvider.getMappedJar().toPath();
 		Path outputIntermediary = mapProvider.getIntermediaryJar().toPath();
 
-		for (String toM : Arrays.asList("named", "intermediary")) {
-			Path output = "named".equals(toM) ? outputMapped : outputIntermediary;
-
-			project.getLogger().lifecycle(":remapping minecraft (TinyRemapper, " + fromM + " -> " + toM + ")");
-
-			TinyRemapper remapper = TinyRemapper.newRemapper()
-					.withMappings(TinyRemapperMappingsHelper.create(mappingsProvider.getMappings(), fromM, toM))
-					.renameInvalidLocals(true)
-					.rebuildSourceFilenames(true)
-					.build();
-
-			try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(output).build()) {
-				outputConsumer.addNonClassFiles(input);
-				remapper.readClassPath(classpath);
-				remapper.readInputs(input);
-				remapper.apply(outputConsumer);
-			} catch (Exception e) {
-				throw new RuntimeException("Failed to remap JAR", e);
-			} finally {
-				remapper.finish();
+		TinyMappings mappings = mappingsProvider.getMappings();
+		project.getLogger().lifecycle(":remapping minecraft (TinyRemapper, " + fromM + " -> named, intermediary)");
+
+		if (!hasHeadroom(input, classpath)) {
+			//Two remappers at once would risk running out of memory, so they'll have to take turns
+			project.getLogger().info("Not enough free memory to remap the named and intermediary jars at once");
+			remap(mappings, input, outputMapped, classpath, fromM, "named");
+			remap(mappings, input, outputIntermediary, classpath, fromM, "intermediary");
+			return;
+		}
+
+		//Each remapper can only hold one set of mappings, so the two namespaces are remapped side by side instead
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<?>> remaps = new ArrayList<>();
+			remaps.add(executor.submit(() -> remap(mappings, input, outputMapped, classpath, fromM, "named")));
+			remaps.add(executor.submit(() -> remap(mappings, input, outputIntermediary, classpath, fromM, "intermediary")));
+
+			for (Future<?> remap : remaps) {
+				try {
+					remap.get();
+				} catch (ExecutionException e) {
+					remaps.forEach(other -> other.cancel(true));
+					Throwables.throwIfUnchecked(e.getCause());
+					throw new RuntimeException("Failed to remap JAR", e.getCause());
+				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted remapping minecraft", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Check whether there is room in the heap for a second remapper on top of the first. Each remapper holds every class
+	 * it reads, which as a rough guide takes up around six times the size of the (compressed) jars they come from.
+	 */
+	private static boolean hasHeadroom(Path input, Path[] classpath) {
+		long jars = input.toFile().length();
+		for (Path path : classpath) {
+			jars += path.toFile().length();
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		return available > 2 * 6 * jars;
+	}
+
+	private static void remap(TinyMappings mappings, Path input, Path output, Path[] classpath, String fromM, String toM) {
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings(TinyRemapperMappingsHelper.create(mappings, fromM, toM))
+				.renameInvalidLocals(true)
+				.rebuildSourceFilenames(true)
+				.build();
+
+		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(output).build()) {
+			outputConsumer.addNonClassFiles(input);
+			remapper.readClassPath(classpath);
+			remapper.readInputs(input);
+			remapper.apply(outputConsumer);
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to remap JAR to " + toM, e);
+		} finally {
+			remapper.finish();
 		}
 	}
 }
@@ -41,11 +41,13 @@ public class MinecraftVersionInfo {
 	public class Downloads {
 		public String url;
 		public String sha1;
+		public long size;
 	}
 
 	public class AssetIndex {
 		private String id;
 		public String sha1;
+		public long size;
 		public String url;
 
 		public String getId() {
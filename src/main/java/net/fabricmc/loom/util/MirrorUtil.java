@@ -0,0 +1,112 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.loom.LoomGradleExtension;
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * Points downloads from Mojang at the {@link LoomGradleExtension#mirror mirror} instead, if one has been set.
+ *
+ * <p>A mirror holds each file under the host and path it would otherwise be downloaded from, so
+ * <code>https://libraries.minecraft.net/org/ow2/asm/...</code> comes from <code>&lt;mirror&gt;/libraries.minecraft.net/org/ow2/asm/...</code>.
+ * It can either be a URL, or a directory for the files to be copied straight out of.
+ */
+public class MirrorUtil {
+	/**
+	 * Get the URL the given one should be downloaded from, which is the same URL unless a mirror has been set
+	 *
+	 * @param project The project to find the mirror for
+	 * @param url The URL the file would normally be downloaded from
+	 *
+	 * @return The URL to download from
+	 *
+	 * @throws MalformedURLException If the given URL or the mirror are invalid
+	 */
+	public static URL getURL(Project project, String url) throws MalformedURLException {
+		return new URL(getMirrored(project, url));
+	}
+
+	/**
+	 * Get the URL the given one should be downloaded from, which is the same URL unless a mirror has been set
+	 *
+	 * @param project The project to find the mirror for
+	 * @param url The URL the file would normally be downloaded from
+	 *
+	 * @return The URL to download from
+	 */
+	public static String getMirrored(Project project, String url) {
+		String base = getBase(project);
+		return base != null ? base + getPath(url) : url;
+	}
+
+	/**
+	 * Get the base URL of the mirror, ending with a <code>/</code>
+	 *
+	 * @param project The project to find the mirror for
+	 *
+	 * @return The mirror's URL, or <code>null</code> if no mirror has been set
+	 */
+	public static String getBase(Project project) {
+		String mirror = project.getExtensions().getByType(LoomGradleExtension.class).mirror;
+		if (mirror == null || mirror.isEmpty()) return null;
+
+		if (!mirror.contains("://") && !mirror.startsWith("file:")) {
+			mirror = project.file(mirror).toURI().toString();
+		}
+
+		return mirror.endsWith("/") ? mirror : mirror + '/';
+	}
+
+	/**
+	 * Get the directory the mirror is in, if the mirror is on disk
+	 *
+	 * @param project The project to find the mirror for
+	 *
+	 * @return The mirror's directory, or <code>null</code> if no mirror has been set or it isn't on disk
+	 */
+	public static File getDirectory(Project project) {
+		String base = getBase(project);
+		return base != null && base.startsWith("file:") ? new File(URI.create(base)) : null;
+	}
+
+	/**
+	 * Get where the file downloaded from the given URL is kept in a mirror
+	 *
+	 * @param url The URL the file would normally be downloaded from
+	 *
+	 * @return The path to the file relative to the root of the mirror
+	 */
+	public static String getPath(String url) {
+		URI uri = URI.create(url);
+		String path = uri.getRawPath();
+		return uri.getHost() + (path == null || path.isEmpty() ? "/" : path.startsWith("/") ? path : '/' + path);
+	}
+}
@@ -42,6 +42,10 @@ import org.gradle.language.base.artifact.SourcesArtifact;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -49,6 +53,8 @@ public class ModCompileRemapper {
 	public static void remapDependencies(Project project, String mappingsPrefix, LoomGradleExtension extension, Configuration modCompile, Configuration modCompileRemapped, Configuration regularCompile, Consumer<Runnable> postPopulationScheduler) {
 		Logger logger = project.getLogger();
 		DependencyHandler dependencies = project.getDependencies();
+		File modStore = extension.getRemappedModCache();
+		List<RemappedMod> mods = new ArrayList<>();
 
 		for (ResolvedArtifact artifact : modCompile.getResolvedConfiguration().getResolvedArtifacts()) {
 			String group;
@@ -80,14 +86,32 @@ public class ModCompileRemapper {
 			String remappedFilename = mappingsPrefix + "." + group + "." + name + "-" + version + classifierSuffix.replace(':', '-');
 			project.getLogger().lifecycle(":providing " + remappedLog);
 
-			File modStore = extension.getRemappedModCache();
+			mods.add(new RemappedMod(artifact.getFile(), new File(modStore, remappedFilename + ".jar"), sources, remappedLog, remappedNotation, remappedFilename));
+		}
+
+		Map<File, File> outdated = new LinkedHashMap<>();
+		for (RemappedMod mod : mods) {
+			if (isOutdated(project, mod)) {
+				outdated.put(mod.input, mod.output);
+			}
+		}
+
+		if (!outdated.isEmpty()) {
+			//All the mods are remapped together, everything else is done one mod at a time in resolution order
+			try {
+				ModProcessor.remapMods(outdated, project);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to remap mods", e);
+			}
+		}
 
-			remapArtifact(project, modCompileRemapped, artifact, remappedFilename, modStore);
+		for (RemappedMod mod : mods) {
+			finishArtifact(project, modCompileRemapped, mod, outdated.containsKey(mod.input));
 
-			project.getDependencies().add(modCompileRemapped.getName(), project.getDependencies().module(remappedNotation));
+			project.getDependencies().add(modCompileRemapped.getName(), project.getDependencies().module(mod.notation));
 
-			if (sources != null) {
-				scheduleSourcesRemapping(project, postPopulationScheduler, sources, remappedLog, remappedFilename, modStore);
+			if (mod.sources != null) {
+				scheduleSourcesRemapping(project, postPopulationScheduler, mod.sources, mod.log, mod.filename, modStore);
 			}
 		}
 	}
@@ -118,13 +142,28 @@ public class ModCompileRemapper {
 		dependencies.add(regularCompile.getName(), dep);
 	}
 
-	private static void remapArtifact(Project project, Configuration config, ResolvedArtifact artifact, String remappedFilename, File modStore) {
-		File input = artifact.getFile();
-		File output = new File(modStore, remappedFilename + ".jar");
+	/**
+	 * Checks if the given mod needs remapping, either because the output is missing or appears to be outdated compared to the input
+	 */
+	private static boolean isOutdated(Project project, RemappedMod mod) {
+		File input = mod.input;
+		File output = mod.output;
+
 		if (!output.exists() || input.lastModified() <= 0 || input.lastModified() > output.lastModified()) {
-			//If the output doesn't exist, or appears to be outdated compared to the input we'll remap it
+			return true;
+		} else {
+			project.getLogger().info(output.getName() + " is up to date with " + input.getName());
+			return false;
+		}
+	}
+
+	private static void finishArtifact(Project project, Configuration config, RemappedMod mod, boolean remapped) {
+		File input = mod.input;
+		File output = mod.output;
+
+		if (remapped) {
 			try {
-				ModProcessor.processMod(input, output, project, config);
+				ModProcessor.processNestedJars(input, project, config);
 			} catch (IOException e) {
 				throw new RuntimeException("Failed to remap mod", e);
 			}
@@ -134,8 +173,6 @@ public class ModCompileRemapper {
 			}
 
 			output.setLastModified(input.lastModified());
-		} else {
-			project.getLogger().info(output.getName() + " is up to date with " + input.getName());
 		}
 
 		ModProcessor.acknowledgeMod(input, output, project, config);
@@ -175,4 +212,18 @@ public class ModCompileRemapper {
 			}
 		});
 	}
+
+	private static class RemappedMod {
+		final File input, output, sources;
+		final String log, notation, filename;
+
+		RemappedMod(File input, File output, File sources, String log, String notation, String filename) {
+			this.input = input;
+			this.output = output;
+			this.sources = sources;
+			this.log = log;
+			this.notation = notation;
+			this.filename = filename;
+		}
+	}
 }
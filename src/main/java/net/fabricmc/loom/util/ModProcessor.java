@@ -24,12 +24,14 @@
 
 package net.fabricmc.loom.util;
 
+import com.google.common.base.Throwables;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
+import net.fabricmc.loom.util.mappings.TinyMappings;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import org.apache.commons.io.IOUtils;
@@ -48,26 +50,164 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ModProcessor {
 	private static final Gson GSON = new Gson();
 
 	public static void processMod(File input, File output, Project project, Configuration config) throws IOException {
-		if(output.exists()){
-			output.delete();
+		remapJar(input, output, project, getRemapClasspath(project, Collections.singleton(input)));
+		processNestedJars(input, project, config);
+		//Always strip the nested jars
+		stripNestedJars(output);
+	}
+
+	/**
+	 * Remap the given mods to their outputs with the nested jars stripped, extracting them is left to
+	 * {@link #processNestedJars(File, Project, Configuration)}. The mods are remapped together in one go where possible,
+	 * so the classpath they share is only read once rather than once for every mod. Mods which have to be remapped on
+	 * their own are spread over a pool of {@link LoomGradleExtension#remapThreads} threads alongside everything else.
+	 *
+	 * @param mods The mods to remap, each mapped to the file to write it to
+	 */
+	public static void remapMods(Map<File, File> mods, Project project) throws IOException {
+		Map<File, List<String>> classes = new LinkedHashMap<>();
+		Map<String, File> owners = new HashMap<>();
+		Set<File> clashing = new LinkedHashSet<>();
+
+		for (File input : mods.keySet()) {
+			List<String> names = getClassNames(input);
+			classes.put(input, names);
+
+			for (String name : names) {
+				File owner = owners.putIfAbsent(name, input);
+
+				if (owner != null && owner != input) {
+					clashing.add(owner);
+					clashing.add(input);
+				}
+			}
+		}
+
+		//Classpaths have to be resolved here, the remapping itself is done on the pool
+		List<Callable<Void>> remaps = new ArrayList<>();
+
+		//The remapper only keeps one of each class, so any mods which share classes have to be done on their own
+		for (File input : clashing) {
+			classes.remove(input);
+			Path[] classpath = getRemapClasspath(project, Collections.singleton(input));
+			remaps.add(() -> {
+				remapJar(input, mods.get(input), project, classpath);
+				return null;
+			});
+		}
+
+		if (classes.size() == 1) {
+			File input = classes.keySet().iterator().next();
+			Path[] classpath = getRemapClasspath(project, classes.keySet());
+			remaps.add(() -> {
+				remapJar(input, mods.get(input), project, classpath);
+				return null;
+			});
+		} else if (!classes.isEmpty()) {
+			Path[] classpath = getRemapClasspath(project, classes.keySet());
+			remaps.add(() -> {
+				remapJars(classes, mods, project, classpath);
+				return null;
+			});
+		}
+
+		int threads = Math.max(1, Math.min(project.getExtensions().getByType(LoomGradleExtension.class).remapThreads, remaps.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> remap : remaps) {
+				futures.add(executor.submit(remap));
+			}
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+					Throwables.throwIfUnchecked(e.getCause());
+					throw new RuntimeException("Failed to remap mods", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted remapping mods", e);
+		} finally {
+			executor.shutdownNow();
 		}
-		remapJar(input, output, project);
+
+		for (File output : mods.values()) {
+			//Always strip the nested jars
+			stripNestedJars(output);
+		}
+	}
+
+	private static List<String> getClassNames(File input) throws IOException {
+		List<String> names = new ArrayList<>();
+
+		try (ZipFile zip = new ZipFile(input)) {
+			for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+				String name = it.nextElement().getName();
+
+				if (name.endsWith(".class")) {
+					names.add(name.substring(0, name.length() - 6));
+				}
+			}
+		}
+
+		return names;
+	}
+
+	public static void processNestedJars(File input, Project project, Configuration config) throws IOException {
 		//Enable this if you want your nested jars to be extracted, this will extract **all** jars
 		if(project.getExtensions().getByType(LoomGradleExtension.class).extractJars){
 			handleNestedJars(input, project, config);
 		}
-		//Always strip the nested jars
-		stripNestedJars(output);
+	}
+
+	/**
+	 * Get the classpath to remap the given mods against, which is every mod and library except the mods themselves
+	 */
+	private static Path[] getRemapClasspath(Project project, Collection<File> inputs) {
+		MinecraftMappedProvider mappedProvider = project.getExtensions().getByType(LoomGradleExtension.class).getMinecraftMappedProvider();
+
+		Set<Path> modCompiles = new LinkedHashSet<>();
+		for (RemappedConfigurationEntry entry : Constants.MOD_COMPILE_ENTRIES) {
+			project.getConfigurations().getByName(entry.getSourceConfiguration()).getFiles().stream()
+					.filter((f) -> !inputs.contains(f))
+					.map(File::toPath)
+					.forEach(modCompiles::add);
+		}
+
+		List<Path> classpath = new ArrayList<>(modCompiles);
+		classpath.add(mappedProvider.MINECRAFT_INTERMEDIARY_JAR.toPath());
+		mappedProvider.getMapperPaths().stream().map(File::toPath).forEach(classpath::add);
+
+		//Only the class hierarchy is needed from the classpath, which the skeletons of each jar have
+		return SkeletonClasspath.get(project, classpath);
 	}
 
 	public static void acknowledgeMod(File input, File output, Project project, Configuration config) {
@@ -131,35 +271,18 @@ public class ModProcessor {
 		}))});
 	}
 
-	private static void remapJar(File input, File output, Project project) throws IOException {
+	private static void remapJar(File input, File output, Project project, Path[] classpath) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		String fromM = "intermediary";
 		String toM = "named";
 
-		MinecraftMappedProvider mappedProvider = extension.getMinecraftMappedProvider();
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
-
-		File mappingsFile = mappingsProvider.MAPPINGS_TINY;
-		Path mappings = mappingsFile.toPath();
 		Path inputPath = input.getAbsoluteFile().toPath();
-		Path mc = mappedProvider.MINECRAFT_INTERMEDIARY_JAR.toPath();
-		Path[] mcDeps = mappedProvider.getMapperPaths().stream()
-			.map(File::toPath)
-			.toArray(Path[]::new);
-		Set<Path> modCompiles = new HashSet<>();
-		for (RemappedConfigurationEntry entry : Constants.MOD_COMPILE_ENTRIES) {
-			project.getConfigurations().getByName(entry.getSourceConfiguration()).getFiles().stream()
-					.filter((f) -> !f.equals(input))
-					.map(p -> {
-						if (p.equals(input)) {
-							return inputPath;
-						} else {
-							return p.toPath();
-						}
-					})
-					.forEach(modCompiles::add);
-		}
 
+		//The output is written into if it exists already, which would keep anything removed from the input
+		if(output.exists()){
+			output.delete();
+		}
 
 		project.getLogger().lifecycle(":remapping " + input.getName() + " (TinyRemapper, " + fromM + " -> " + toM + ")");
 
@@ -169,9 +292,7 @@ public class ModProcessor {
 
 		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(Paths.get(output.getAbsolutePath())).build()) {
 			outputConsumer.addNonClassFiles(inputPath);
-			remapper.readClassPath(modCompiles.toArray(new Path[0]));
-			remapper.readClassPath(mc);
-			remapper.readClassPath(mcDeps);
+			remapper.readClassPath(classpath);
 			remapper.readInputs(inputPath);
 			remapper.apply(outputConsumer);
 		} finally {
@@ -183,6 +304,88 @@ public class ModProcessor {
 		}
 	}
 
+	/**
+	 * Remap the given mods in a single remapper, with each class written out to the mod it came from
+	 */
+	private static void remapJars(Map<File, List<String>> classes, Map<File, File> outputs, Project project, Path[] classpath) throws IOException {
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		String fromM = "intermediary";
+		String toM = "named";
+
+		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+		TinyMappings mappings = mappingsProvider.getMappings();
+		Map<String, String> classNames = TinyRemapperMappingsHelper.getClassNames(mappings, fromM, toM);
+
+		project.getLogger().lifecycle(":remapping " + classes.size() + " mods (TinyRemapper, " + fromM + " -> " + toM + ")");
+
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+			.withMappings(TinyRemapperMappingsHelper.create(mappings, fromM, toM))
+			.build();
+
+		List<OutputConsumerPath> outputConsumers = new ArrayList<>();
+		Map<String, OutputConsumerPath> classOutputs = new HashMap<>();
+
+		try {
+			try {
+				for (Map.Entry<File, List<String>> entry : classes.entrySet()) {
+					File output = outputs.get(entry.getKey());
+					if(output.exists()){
+						output.delete();
+					}
+
+					OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(Paths.get(output.getAbsolutePath())).build();
+					outputConsumers.add(outputConsumer);
+					outputConsumer.addNonClassFiles(entry.getKey().getAbsoluteFile().toPath());
+
+					for (String name : entry.getValue()) {
+						classOutputs.put(classNames.getOrDefault(name, name), outputConsumer);
+					}
+				}
+
+				remapper.readClassPath(classpath);
+				remapper.readInputs(classes.keySet().stream().map(input -> input.getAbsoluteFile().toPath()).toArray(Path[]::new));
+				remapper.apply((name, data) -> {
+					OutputConsumerPath outputConsumer = classOutputs.get(name);
+
+					//Inner classes which aren't in the mappings are renamed with their outer class, so belong to the same mod
+					for (String outer = name; outputConsumer == null && outer.lastIndexOf('$') > 0; ) {
+						outer = outer.substring(0, outer.lastIndexOf('$'));
+						outputConsumer = classOutputs.get(outer);
+					}
+
+					if (outputConsumer == null) throw new IllegalStateException("Remapped " + name + " which didn't come from any mod");
+
+					outputConsumer.accept(name, data);
+				});
+			} finally {
+				IOException failure = null;
+
+				for (OutputConsumerPath outputConsumer : outputConsumers) {
+					try {
+						outputConsumer.close();
+					} catch (IOException e) {
+						if (failure == null) {
+							failure = e;
+						} else {
+							failure.addSuppressed(e);
+						}
+					}
+				}
+
+				if (failure != null) throw failure;
+			}
+		} finally {
+			remapper.finish();
+		}
+
+		for (File input : classes.keySet()) {
+			File output = outputs.get(input);
+			if(!output.exists()){
+				throw new RuntimeException("Failed to remap JAR to " + toM + " file not found: " + output.getAbsolutePath());
+			}
+		}
+	}
+
 	static void readInstallerJson(File file, Project project){
 		try {
 			LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
@@ -0,0 +1,305 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.fabricmc.loom.util.progress.ProgressLogger;
+import org.gradle.api.logging.Logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+/**
+ * Runs downloads on a bounded pool of worker threads.
+ *
+ * <p>The workers go through {@link DownloadUtil}, so connections to the same host are kept alive and reused
+ * by {@link java.net.HttpURLConnection} between downloads. No more than a set number of downloads from any one
+ * host are run at once, jobs for a busy host wait their turn without holding up a worker. Downloads which fail
+ * for a reason which might go away on its own are retried with an exponential backoff, and any which still fail
+ * are all reported together at the end rather than abandoning everything else.
+ *
+ * <p>Progress is only ever reported from the thread calling {@link #await(ProgressLogger, String)}, as Gradle's
+ * progress loggers are not thread-safe. Downloaders should be {@link #close() closed} once finished with, so that
+ * nothing is left running if something goes wrong before they are awaited.
+ */
+public class ParallelDownloader implements AutoCloseable {
+	private static final long INITIAL_BACKOFF = 500;
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(10);
+	/** The most failures to list in full, there's little point printing thousands of the same problem */
+	private static final int MAX_REPORTED_FAILURES = 10;
+
+	private final Logger logger;
+	private final ExecutorService executor;
+	private final int perHost;
+	private final int attempts;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private final BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+	private int submitted;
+
+	/**
+	 * @param threads The maximum number of downloads to run at once
+	 * @param perHost The maximum number of downloads to run at once from any one host
+	 * @param attempts The number of times to try each download before giving up on it
+	 * @param logger The logger to print information to, typically from {@link org.gradle.api.Project#getLogger()}
+	 */
+	public ParallelDownloader(int threads, int perHost, int attempts, Logger logger) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one download thread, got " + threads);
+		}
+		if (perHost < 1) {
+			throw new IllegalArgumentException("Need to allow at least one download per host, got " + perHost);
+		}
+		if (attempts < 1) {
+			throw new IllegalArgumentException("Need to try each download at least once, got " + attempts);
+		}
+
+		this.logger = logger;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("loom-download-%d").setDaemon(true).build());
+		this.perHost = perHost;
+		this.attempts = attempts;
+	}
+
+	/**
+	 * Queue a quiet {@link DownloadUtil#downloadIfChanged(URL, File, Logger, boolean)} of the given {@link URL} to the given {@link File}
+	 *
+	 * @param name The name to report progress with
+	 * @param from The URL of the file to be downloaded
+	 * @param to The destination to be saved to, and compared against if it exists
+	 */
+	public void submit(String name, URL from, File to) {
+		submit(name, from, () -> DownloadUtil.downloadIfChanged(from, to, logger, true));
+	}
+
+	/**
+	 * Queue an arbitrary piece of work, typically checking whether a file is up to date before downloading it.
+	 * The job might be run more than once if it fails, so should always check what still needs doing.
+	 *
+	 * @param name The name to report progress with
+	 * @param from The URL the job downloads from, used to limit how many jobs run against the same host
+	 * @param job The work to be done on one of the download threads
+	 */
+	public void submit(String name, URL from, Job job) {
+		Host host = hosts.computeIfAbsent(from.getProtocol() + "://" + from.getAuthority(), k -> new Host());
+		submitted++;
+
+		host.offer(() -> {
+			try {
+				run(name, job, attempts, logger);
+				results.add(new Result(name, null));
+			} catch (Throwable t) {
+				results.add(new Result(name, t));
+			} finally {
+				host.finished();
+			}
+		});
+	}
+
+	/**
+	 * Wait for every queued job to finish, then report every one which failed
+	 *
+	 * @param progressLogger The progress logger to report each finished job to
+	 * @param unit What the jobs are doing, used to describe progress
+	 *
+	 * @throws IOException If any of the jobs fail to download, after however many attempts they were allowed
+	 */
+	public void await(ProgressLogger progressLogger, String unit) throws IOException {
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+
+		try {
+			for (int position = 1; position <= submitted; position++) {
+				Result result;
+
+				try {
+					result = results.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for downloads", e);
+				}
+
+				if (result.failure != null) {
+					if (result.failure instanceof Error) throw (Error) result.failure;
+					failures.put(result.name, result.failure);
+				}
+
+				String name = result.name;
+				int end = name.lastIndexOf('/') + 1;
+				if (end > 0) name = name.substring(end);
+				progressLogger.progress(name + " - " + position + "/" + submitted + " (" + (int) ((position / (double) submitted) * 100) + "%) " + unit + (failures.isEmpty() ? "" : ", " + failures.size() + " failed"));
+			}
+		} finally {
+			//Either everything is done or something went badly wrong, there's no use running anything left over
+			executor.shutdownNow();
+		}
+
+		if (failures.size() == 1) {
+			//Nothing to summarise, so rethrow it as it was
+			Throwable failure = failures.values().iterator().next();
+			if (failure instanceof IOException) throw (IOException) failure;
+			if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+			throw new IOException(failure);
+		} else if (!failures.isEmpty()) {
+			StringBuilder message = new StringBuilder().append(failures.size()).append(" of ").append(submitted).append(" downloads failed:");
+			int listed = 0;
+
+			for (Map.Entry<String, Throwable> entry : failures.entrySet()) {
+				if (listed++ < MAX_REPORTED_FAILURES) {
+					message.append("\n\t").append(entry.getKey()).append(": ").append(entry.getValue());
+				}
+			}
+			if (listed > MAX_REPORTED_FAILURES) {
+				message.append("\n\t...and ").append(listed - MAX_REPORTED_FAILURES).append(" more");
+			}
+
+			IOException summary = new IOException(message.toString());
+			failures.values().forEach(summary::addSuppressed);
+			throw summary;
+		}
+	}
+
+	/**
+	 * Stop running any jobs which haven't finished yet, safe to call whether or not the downloader has been awaited
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Run the given job, retrying it with an exponential backoff if it fails for a reason which might go away on its own
+	 *
+	 * @param name The name of the job, used to report retries
+	 * @param job The job to run
+	 * @param attempts The number of times to try the job before giving up
+	 * @param logger The logger to report retries to
+	 *
+	 * @throws IOException If the job fails for a reason which won't go away, or on its last attempt
+	 */
+	public static void run(String name, Job job, int attempts, Logger logger) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				job.run();
+				return;
+			} catch (IOException e) {
+				if (attempt >= attempts || !isTransient(e)) throw e;
+
+				long backoff = Math.min(INITIAL_BACKOFF << (attempt - 1), MAX_BACKOFF);
+				backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1); //Spread out retries which all failed at once
+				logger.info("Retrying {} in {}ms (attempt {} of {}): {}", name, backoff, attempt + 1, attempts, e.toString());
+
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					e.addSuppressed(interrupt);
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decide whether trying again might fix the given exception, which is only the case for connections which failed or
+	 * timed out, downloads which were damaged on the way, server errors and rate limiting. Anything else (such as a
+	 * missing file, an unknown host or an unsupported response) would only fail the same way again.
+	 *
+	 * @param e The exception to check
+	 *
+	 * @return Whether it might be worth trying again
+	 */
+	public static boolean isTransient(IOException e) {
+		if (e instanceof DownloadUtil.HttpStatusException) {
+			int code = ((DownloadUtil.HttpStatusException) e).getStatusCode();
+			return code == 408 || code == 429 || code >= 500;
+		}
+
+		return e instanceof SocketException || e instanceof SocketTimeoutException //Refused, reset or timed out connections
+				|| e instanceof EOFException || e instanceof ZipException //Responses which were cut short or garbled
+				|| e instanceof DownloadUtil.CorruptDownloadException;
+	}
+
+	/**
+	 * Hands the jobs for a single host to the workers, making sure only so many of them are running at once
+	 */
+	private class Host {
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+		private int running;
+
+		synchronized void offer(Runnable job) {
+			if (running < perHost) {
+				running++;
+				executor.execute(job);
+			} else {
+				waiting.add(job);
+			}
+		}
+
+		synchronized void finished() {
+			Runnable next = waiting.poll();
+
+			if (next != null) {
+				try {
+					executor.execute(next);
+					return;
+				} catch (RejectedExecutionException e) {
+					//Already given up on everything, the job can be dropped
+				}
+			}
+
+			running--;
+		}
+	}
+
+	private static class Result {
+		final String name;
+		final Throwable failure;
+
+		Result(String name, Throwable failure) {
+			this.name = name;
+			this.failure = failure;
+		}
+	}
+
+	@FunctionalInterface
+	public interface Job {
+		void run() throws IOException;
+	}
+}
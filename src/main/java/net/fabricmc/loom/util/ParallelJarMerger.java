@@ -0,0 +1,232 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import net.fabricmc.stitch.merge.ClassMerger;
+import net.fabricmc.stitch.util.SyntheticParameterClassVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Merges the client and server jars the same way stitch's {@link net.fabricmc.stitch.merge.JarMerger JarMerger} does,
+ * only with the classes merged across a pool of threads and the results written out as soon as they are ready rather
+ * than once everything is done.
+ *
+ * <p>Both jars are only read through their central directories, and entries are written in name order so the output
+ * doesn't depend on which thread finished first. At most a few entries per thread are ever held in memory at once.
+ */
+public class ParallelJarMerger {
+	private static final ClassMerger CLASS_MERGER = new ClassMerger();
+	private static final byte[] MANIFEST = "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8);
+
+	private final File client, server, output;
+	private boolean offsetSyntheticParams;
+
+	public ParallelJarMerger(File client, File server, File output) {
+		this.client = client;
+		this.server = server;
+		this.output = output;
+	}
+
+	/**
+	 * Offset the parameters of synthetic methods (such as enum constructors) so they line up with the source
+	 *
+	 * @see net.fabricmc.stitch.merge.JarMerger#enableSyntheticParamsOffset()
+	 */
+	public void enableSyntheticParamsOffset() {
+		offsetSyntheticParams = true;
+	}
+
+	/**
+	 * Merge the jars, replacing the output if it exists already
+	 *
+	 * @param threads The number of threads to merge classes with
+	 *
+	 * @throws IOException If an exception occurs reading either jar or writing the output
+	 */
+	public void merge(int threads) throws IOException {
+		Files.deleteIfExists(output.toPath());
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (ZipFile clientJar = new ZipFile(client); ZipFile serverJar = new ZipFile(server);
+				ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output.toPath()))) {
+			Map<String, ZipEntry> clientEntries = readEntries(clientJar);
+			Map<String, ZipEntry> serverEntries = readEntries(serverJar);
+
+			TreeSet<String> names = new TreeSet<>(clientEntries.keySet());
+			names.addAll(serverEntries.keySet());
+
+			Deque<Future<Result>> pending = new ArrayDeque<>();
+			for (String name : names) {
+				ZipEntry clientEntry = clientEntries.get(name);
+				ZipEntry serverEntry = serverEntries.get(name);
+				pending.add(executor.submit(() -> merge(name, clientJar, clientEntry, serverJar, serverEntry)));
+
+				//Keep the workers busy without reading the whole of both jars into memory
+				if (pending.size() > threads * 4) write(out, pending.remove());
+			}
+
+			while (!pending.isEmpty()) {
+				write(out, pending.remove());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read all the entries of the given jar which should be merged, in the same way as stitch does
+	 */
+	private static Map<String, ZipEntry> readEntries(ZipFile jar) {
+		Map<String, ZipEntry> entries = new HashMap<>();
+
+		for (Enumeration<? extends ZipEntry> it = jar.entries(); it.hasMoreElements(); ) {
+			ZipEntry entry = it.nextElement();
+			String name = entry.getName();
+			if (entry.isDirectory()) continue;
+
+			//Signatures won't match once merged
+			if (name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA"))) continue;
+
+			entries.put(name, entry);
+		}
+
+		return entries;
+	}
+
+	private Result merge(String name, ZipFile clientJar, ZipEntry clientEntry, ZipFile serverJar, ZipEntry serverEntry) throws IOException {
+		boolean isClass = name.endsWith(".class");
+		boolean isMinecraft = clientEntry != null || name.startsWith("net/minecraft") || !name.contains("/");
+
+		if (!isClass) {
+			//Non-class files are taken from the client wherever possible
+			ZipEntry entry = clientEntry != null ? clientEntry : serverEntry;
+			byte[] data = "META-INF/MANIFEST.MF".equals(name) ? MANIFEST : read(clientEntry != null ? clientJar : serverJar, entry);
+			return new Result(name, entry.getTime(), data);
+		}
+
+		if (clientEntry == null && !isMinecraft) {
+			return null; //The server bundles libraries that the client doesn't, they're not wanted
+		}
+
+		byte[] data;
+		String side;
+		long time;
+		if (clientEntry != null && serverEntry != null) {
+			byte[] clientData = read(clientJar, clientEntry);
+			byte[] serverData = read(serverJar, serverEntry);
+
+			data = Arrays.equals(clientData, serverData) ? clientData : CLASS_MERGER.merge(clientData, serverData);
+			side = null;
+			time = clientEntry.getTime();
+		} else if (clientEntry != null) {
+			data = read(clientJar, clientEntry);
+			side = "CLIENT";
+			time = clientEntry.getTime();
+		} else {
+			data = read(serverJar, serverEntry);
+			side = "SERVER";
+			time = serverEntry.getTime();
+		}
+
+		if (isMinecraft) {
+			ClassWriter writer = new ClassWriter(0);
+			ClassVisitor visitor = writer;
+
+			if (side != null) visitor = new ClassMerger.SidedClassVisitor(Opcodes.ASM7, visitor, side);
+			if (offsetSyntheticParams) visitor = new SyntheticParameterClassVisitor(Opcodes.ASM7, visitor);
+
+			if (visitor != writer) {
+				new ClassReader(data).accept(visitor, 0);
+				data = writer.toByteArray();
+			}
+		}
+
+		return new Result(name, time, data);
+	}
+
+	private static byte[] read(ZipFile jar, ZipEntry entry) throws IOException {
+		try (InputStream in = jar.getInputStream(entry)) {
+			return ByteStreams.toByteArray(in);
+		}
+	}
+
+	private static void write(ZipOutputStream out, Future<Result> future) throws IOException {
+		Result result;
+		try {
+			result = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted merging jars", e);
+		} catch (ExecutionException e) {
+			Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IOException("Error merging jars", e.getCause());
+		}
+		if (result == null) return;
+
+		ZipEntry entry = new ZipEntry(result.name);
+		if (result.time >= 0) entry.setTime(result.time);
+		out.putNextEntry(entry);
+		out.write(result.data);
+		out.closeEntry();
+	}
+
+	private static class Result {
+		final String name;
+		final long time;
+		final byte[] data;
+
+		Result(String name, long time, byte[] data) {
+			this.name = name;
+			this.time = time;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps hold of JSON files which have already been parsed, keyed by the type they were parsed into and the SHA-1
+ * of their contents. As the hash comes from the {@link FileHashCache}, finding out a file hasn't changed only costs
+ * looking at its size and modification time, so a warm configuration doesn't read or parse the JSON at all.
+ *
+ * <p>The same parsed object is given out every time, so it must be treated as read only.
+ */
+public final class ParsedJsonCache {
+	/** There's only a handful of files per Minecraft version, so this is plenty to keep every recent version around */
+	private static final int MAX_ENTRIES = 32;
+	private static final Map<Key, Object> CACHE = new LinkedHashMap<Key, Object>(16, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private ParsedJsonCache() {
+	}
+
+	/**
+	 * Parse the given file as the given type, or get the result of parsing it last time if it hasn't changed since
+	 *
+	 * @param file The JSON file to parse
+	 * @param type The type to parse the JSON into
+	 * @param gson The Gson to parse the JSON with
+	 *
+	 * @return The parsed JSON
+	 *
+	 * @throws IOException If the file is missing or an exception occurs reading it
+	 */
+	public static <T> T read(File file, Class<T> type, Gson gson) throws IOException {
+		Key key = new Key(type, FileHashCache.INSTANCE.sha1(file));
+
+		synchronized (CACHE) {
+			Object cached = CACHE.get(key);
+			if (cached != null) return type.cast(cached);
+		}
+
+		T parsed;
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			parsed = gson.fromJson(reader, type);
+		}
+
+		if (parsed != null) {
+			synchronized (CACHE) {
+				CACHE.put(key, parsed);
+			}
+		}
+
+		return parsed;
+	}
+
+	private static final class Key {
+		private final Class<?> type;
+		private final byte[] sha1;
+		private final int hash;
+
+		Key(Class<?> type, byte[] sha1) {
+			this.type = type;
+			this.sha1 = sha1;
+			hash = 31 * type.hashCode() + Arrays.hashCode(sha1);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+
+			Key that = (Key) obj;
+			return type == that.type && Arrays.equals(sha1, that.sha1);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.io.ByteStreams;
+import net.fabricmc.loom.LoomGradleExtension;
+import org.gradle.api.Project;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Swaps the jars on a remapping classpath for skeletons of themselves, which only have the classes with their
+ * hierarchy and members. Without any code, debug information or resources a skeleton is a fraction of the size of
+ * the jar it comes from, so reading one to build the class hierarchy takes a fraction of the time.
+ *
+ * <p>Skeletons are kept in the {@link DerivedArtifactStore} by the contents of the jar they come from, so each jar
+ * is only ever stripped once and every remap after that (in any project, for any mappings) reads the skeleton. They
+ * must only ever be read as a classpath, never remapped as inputs or used to run anything.
+ */
+public class SkeletonClasspath {
+	/** Changes to what skeletons keep need to change this too */
+	private static final String VERSION = "skeleton v1";
+
+	/**
+	 * Get the skeletons of the given classpath, making any which don't exist yet
+	 *
+	 * @param project The project the classpath is for
+	 * @param classpath The jars and directories to remap against
+	 *
+	 * @return The skeletons of each jar on the classpath, with directories and anything else left as they are
+	 */
+	public static Path[] get(Project project, Collection<Path> classpath) {
+		DerivedArtifactStore store = project.getExtensions().getByType(LoomGradleExtension.class).getDerivedArtifactStore();
+
+		return classpath.stream().map(path -> {
+			String name = path.getFileName().toString();
+			if (!Files.isRegularFile(path) || !(name.endsWith(".jar") || name.endsWith(".zip"))) return path;
+
+			try {
+				String fingerprint = DerivedArtifactStore.fingerprint(VERSION, path.toFile());
+				File skeleton = store.get("skeleton", fingerprint);
+
+				if (skeleton == null) {
+					File temp = Files.createTempFile(name, ".skeleton").toFile();
+					try {
+						strip(path.toFile(), temp);
+						skeleton = store.put("skeleton", fingerprint, temp);
+					} finally {
+						temp.delete();
+					}
+				}
+
+				return skeleton.toPath();
+			} catch (IOException | RuntimeException e) {
+				project.getLogger().info("Unable to make skeleton of {}, using it in full", path, e);
+				return path;
+			}
+		}).toArray(Path[]::new);
+	}
+
+	/**
+	 * Write the classes from the given jar without code, debug information or frames to the given skeleton jar
+	 */
+	static void strip(File jar, File skeleton) throws IOException {
+		try (ZipFile zip = new ZipFile(jar); ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(skeleton.toPath()))) {
+			for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+				ZipEntry entry = it.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+				byte[] bytes;
+				try (InputStream in = zip.getInputStream(entry)) {
+					bytes = ByteStreams.toByteArray(in);
+				}
+
+				try {
+					ClassWriter writer = new ClassWriter(0);
+					new ClassReader(bytes).accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+					bytes = writer.toByteArray();
+				} catch (RuntimeException e) {
+					//Something ASM can't read, it'll just have to be kept in full
+				}
+
+				out.putNextEntry(new ZipEntry(entry.getName()));
+				out.write(bytes);
+				out.closeEntry();
+			}
+		}
+	}
+}
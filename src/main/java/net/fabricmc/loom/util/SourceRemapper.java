@@ -27,7 +27,7 @@ package net.fabricmc.loom.util;
 import com.google.common.collect.ImmutableMap;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
-import net.fabricmc.mappings.*;
+import net.fabricmc.loom.util.mappings.TinyMappings;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.stitch.util.StitchUtil;
 import org.cadixdev.lorenz.MappingSet;
@@ -63,7 +63,7 @@ public class SourceRemapper {
 
 		MappingSet mappings = extension.getOrCreateSrcMappingCache(toNamed ? 1 : 0, () -> {
 			try {
-				Mappings m = mappingsProvider.getMappings();
+				TinyMappings m = mappingsProvider.getMappings();
 				project.getLogger().lifecycle(":loading " + (toNamed ? "intermediary -> named" : "named -> intermediary") + " source mappings");
 				return new TinyReader(m, toNamed ? "intermediary" : "named", toNamed ? "named" : "intermediary").read();
 			} catch (Exception e) {
@@ -145,10 +145,10 @@ public class SourceRemapper {
 	}
 
 	public static class TinyReader extends MappingsReader {
-		private final Mappings m;
+		private final TinyMappings m;
 		private final String from, to;
 
-		public TinyReader(Mappings m, String from, String to) {
+		public TinyReader(TinyMappings m, String from, String to) {
 			this.m = m;
 			this.from = from;
 			this.to = to;
@@ -156,27 +156,24 @@ public class SourceRemapper {
 
 		@Override
 		public MappingSet read(final MappingSet mappings) {
-			for (ClassEntry entry : m.getClassEntries()) {
-				mappings.getOrCreateClassMapping(entry.get(from))
-						.setDeobfuscatedName(entry.get(to));
-			}
-
-			for (FieldEntry entry : m.getFieldEntries()) {
-				EntryTriple fromEntry = entry.get(from);
-				EntryTriple toEntry = entry.get(to);
+			int from = m.getNamespaceId(this.from);
+			int to = m.getNamespaceId(this.to);
 
-				mappings.getOrCreateClassMapping(fromEntry.getOwner())
-						.getOrCreateFieldMapping(fromEntry.getName(), fromEntry.getDesc())
-						.setDeobfuscatedName(toEntry.getName());
+			for (int i = 0, end = m.getClassCount(); i < end; i++) {
+				mappings.getOrCreateClassMapping(m.getClassName(i, from))
+						.setDeobfuscatedName(m.getClassName(i, to));
 			}
 
-			for (MethodEntry entry : m.getMethodEntries()) {
-				EntryTriple fromEntry = entry.get(from);
-				EntryTriple toEntry = entry.get(to);
+			for (int i = 0, end = m.getFieldCount(); i < end; i++) {
+				mappings.getOrCreateClassMapping(m.getFieldOwner(i, from))
+						.getOrCreateFieldMapping(m.getFieldName(i, from), m.getFieldDesc(i, from))
+						.setDeobfuscatedName(m.getFieldName(i, to));
+			}
 
-				mappings.getOrCreateClassMapping(fromEntry.getOwner())
-						.getOrCreateMethodMapping(fromEntry.getName(), fromEntry.getDesc())
-						.setDeobfuscatedName(toEntry.getName());
+			for (int i = 0, end = m.getMethodCount(); i < end; i++) {
+				mappings.getOrCreateClassMapping(m.getMethodOwner(i, from))
+						.getOrCreateMethodMapping(m.getMethodName(i, from), m.getMethodDesc(i, from))
+						.setDeobfuscatedName(m.getMethodName(i, to));
 			}
 
 			return mappings;
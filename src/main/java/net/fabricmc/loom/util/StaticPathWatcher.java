@@ -49,7 +49,7 @@ public final class StaticPathWatcher {
         }
     }
 
-    public boolean hasFileChanged(Path filePath) {
+    public synchronized boolean hasFileChanged(Path filePath) {
     	if(!Files.exists(filePath)){
     		return true;
 	    }
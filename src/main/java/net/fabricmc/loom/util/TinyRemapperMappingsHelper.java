@@ -24,30 +24,79 @@
 
 package net.fabricmc.loom.util;
 
-import net.fabricmc.mappings.*;
+import net.fabricmc.loom.providers.MappingsCache;
+import net.fabricmc.loom.util.mappings.TinyMappings;
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.MemberInstance;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class TinyRemapperMappingsHelper {
 	private TinyRemapperMappingsHelper() {
 
 	}
 
-	public static IMappingProvider create(Mappings mappings, String from, String to) {
+	public static IMappingProvider create(TinyMappings mappings, String from, String to) {
 		return (classMap, fieldMap, methodMap) -> {
-			for (ClassEntry entry : mappings.getClassEntries()) {
-				classMap.put(entry.get(from), entry.get(to));
+			Tables tables = getTables(mappings, from, to);
+
+			classMap.putAll(tables.classes);
+			fieldMap.putAll(tables.fields);
+			methodMap.putAll(tables.methods);
+		};
+	}
+
+	/**
+	 * Get what each class is renamed to remapping from one namespace to another, classes which aren't in the mappings are missing
+	 */
+	public static Map<String, String> getClassNames(TinyMappings mappings, String from, String to) {
+		return Collections.unmodifiableMap(getTables(mappings, from, to).classes);
+	}
+
+	/**
+	 * Get the tables for remapping from one namespace to another, only building them if the same mappings haven't been
+	 * used to remap between the same namespaces already. The tables are kept with the mappings, so they are dropped
+	 * along with them and count towards their {@link TinyMappings#getWeight() weight} in the {@link MappingsCache}.
+	 */
+	private static Tables getTables(TinyMappings mappings, String from, String to) {
+		Tables tables = mappings.getDerived("tiny-remapper\t" + from + '\t' + to,
+				self -> new Tables(self, self.getNamespaceId(from), self.getNamespaceId(to)), Tables::getWeight);
+
+		//The mappings might be heavier now, which could push the cache over its budget
+		MappingsCache.INSTANCE.reweigh();
+		return tables;
+	}
+
+	private static class Tables {
+		final Map<String, String> classes, fields, methods;
+
+		Tables(TinyMappings mappings, int from, int to) {
+			classes = new HashMap<>(mappings.getClassCount() * 4 / 3 + 1);
+			for (int i = 0, end = mappings.getClassCount(); i < end; i++) {
+				classes.put(mappings.getClassName(i, from), mappings.getClassName(i, to));
 			}
 
-			for (FieldEntry entry : mappings.getFieldEntries()) {
-				EntryTriple fromTriple = entry.get(from);
-				fieldMap.put(fromTriple.getOwner() + "/" + MemberInstance.getFieldId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+			fields = new HashMap<>(mappings.getFieldCount() * 4 / 3 + 1);
+			for (int i = 0, end = mappings.getFieldCount(); i < end; i++) {
+				String id = MemberInstance.getFieldId(mappings.getFieldName(i, from), mappings.getFieldDesc(i, from));
+				fields.put(mappings.getFieldOwner(i, from) + "/" + id, mappings.getFieldName(i, to));
 			}
 
-			for (MethodEntry entry : mappings.getMethodEntries()) {
-				EntryTriple fromTriple = entry.get(from);
-				methodMap.put(fromTriple.getOwner() + "/" + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+			methods = new HashMap<>(mappings.getMethodCount() * 4 / 3 + 1);
+			for (int i = 0, end = mappings.getMethodCount(); i < end; i++) {
+				String id = MemberInstance.getMethodId(mappings.getMethodName(i, from), mappings.getMethodDesc(i, from));
+				methods.put(mappings.getMethodOwner(i, from) + "/" + id, mappings.getMethodName(i, to));
 			}
-		};
+		}
+
+		long getWeight() {
+			//Every entry costs a node and a slot in its map, the names are shared with the mappings but member keys aren't
+			long weight = (classes.size() + fields.size() + methods.size()) * 40L;
+			for (String key : fields.keySet()) weight += 40 + key.length();
+			for (String key : methods.keySet()) weight += 40 + key.length();
+			return weight;
+		}
 	}
 }
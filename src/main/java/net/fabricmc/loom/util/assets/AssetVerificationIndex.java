@@ -0,0 +1,177 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.assets;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which files under an assets directory have already had their SHA-1 checked, along with the size and
+ * modification time they had at the time. So long as neither has changed the file is presumed to still be valid,
+ * which saves reading every asset object again just to find out nothing has changed.
+ *
+ * <p>Safe to use from multiple threads at once.
+ */
+public class AssetVerificationIndex {
+	private static final String HEADER = "loom-asset-verification v1";
+
+	private final Path root;
+	private final File store;
+	private final Map<String, Entry> previous;
+	private final Map<String, Entry> current = new ConcurrentHashMap<>();
+	private volatile boolean changed;
+
+	private AssetVerificationIndex(Path root, File store, Map<String, Entry> previous) {
+		this.root = root;
+		this.store = store;
+		this.previous = previous;
+	}
+
+	/**
+	 * Load the verification index kept in the given file, starting afresh if it is missing or unreadable
+	 *
+	 * @param assets The assets directory the paths in the index are relative to
+	 * @param store The file the index is kept in, typically <code>indexes/&lt;id&gt;.verified</code>
+	 * @param logger The logger to print problems to
+	 *
+	 * @return The loaded index
+	 */
+	public static AssetVerificationIndex load(File assets, File store, Logger logger) {
+		Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+		if (store.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(store.toPath(), StandardCharsets.UTF_8)) {
+				if (HEADER.equals(reader.readLine())) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] parts = line.split("\t");
+						if (parts.length != 4) continue;
+
+						entries.put(parts[0], new Entry(parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				logger.warn("Error reading asset verification index '{}', all assets will be rechecked.", store);
+				entries.clear();
+			}
+		}
+
+		return new AssetVerificationIndex(assets.getAbsoluteFile().toPath(), store, entries);
+	}
+
+	/**
+	 * Check whether the given file was last seen with the given SHA-1, and hasn't changed size or modification time since
+	 *
+	 * @param file The file to check
+	 * @param sha1 The SHA-1 the file is expected to have
+	 *
+	 * @return Whether the file can be presumed to have the given SHA-1 without hashing it
+	 */
+	public boolean isVerified(File file, String sha1) {
+		String key = keyFor(file);
+		Entry entry = previous.get(key);
+		if (entry == null || !entry.sha1.equals(sha1)) return false;
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (IOException e) {
+			return false; //Most likely missing, either way it'll need checking properly
+		}
+
+		if (attributes.size() != entry.size || attributes.lastModifiedTime().toMillis() != entry.modified) return false;
+
+		current.put(key, entry);
+		return true;
+	}
+
+	/**
+	 * Record that the given file has just been checked to have the given SHA-1
+	 *
+	 * @param file The file which was checked
+	 * @param sha1 The SHA-1 the file was found to have
+	 */
+	public void markVerified(File file, String sha1) {
+		current.put(keyFor(file), new Entry(sha1, file.length(), file.lastModified()));
+		changed = true;
+	}
+
+	/**
+	 * Write out every file which has been checked or verified since loading, forgetting any others
+	 *
+	 * @throws IOException If an exception occurs writing the index
+	 */
+	public void save() throws IOException {
+		if (!changed && current.size() == previous.size()) return;
+
+		File parent = store.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) parent.mkdirs();
+
+		Path temp = Files.createTempFile(parent.toPath(), store.getName(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+
+				for (Map.Entry<String, Entry> entry : current.entrySet()) {
+					Entry value = entry.getValue();
+					writer.write(entry.getKey() + '\t' + value.sha1 + '\t' + value.size + '\t' + value.modified);
+					writer.newLine();
+				}
+			}
+
+			Files.move(temp, store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private String keyFor(File file) {
+		return root.relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+	}
+
+	private static class Entry {
+		final String sha1;
+		final long size;
+		final long modified;
+
+		Entry(String sha1, long size, long modified) {
+			this.sha1 = sha1;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+}
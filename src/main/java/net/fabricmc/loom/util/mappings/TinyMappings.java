@@ -0,0 +1,411 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.mappings;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A set of Tiny mappings read straight out of the binary form written by {@link TinyMappingsCompiler}.
+ *
+ * <p>The whole file is read into memory and checked up front, so every string offset and table entry is known to be in
+ * bounds before anything is looked up. Names are only decoded from the string pool when they are first asked for,
+ * and each distinct string is only ever kept once, so the same name used by many entries (or in many namespaces) is
+ * the same {@link String} instance every time it is returned. Classes, fields and methods are each numbered from
+ * <code>0</code>, with every namespace describing the same entry with the same number. So for a given field
+ * <code>i</code>, <code>getFieldName(i, from)</code> and <code>getFieldName(i, to)</code> are the names of the same
+ * field in the two namespaces.
+ *
+ * <p>Safe to use from multiple threads at once, as the backing buffer is only ever read with absolute positions.
+ *
+ * @see TinyMappingsCompiler for the layout of the binary form
+ */
+public final class TinyMappings {
+	private final ByteBuffer buffer;
+	private final byte[] sourceHash;
+	private final List<String> namespaces;
+	private final int classCount, fieldCount, methodCount;
+	private final int[] namespaceTables;
+	/** The SHA-1 of the names in each namespace table, as worked out when compiling */
+	private final byte[][] namespaceHashes;
+	private final int stringOffsets, stringData;
+	/** The strings decoded so far, indexed by string id */
+	private final AtomicReferenceArray<String> strings;
+	/** Things built from these mappings, which are kept for exactly as long as the mappings are */
+	private final ConcurrentMap<String, Object> derived = new ConcurrentHashMap<>();
+	private final AtomicLong derivedWeight = new AtomicLong();
+
+	TinyMappings(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.limit() < TinyMappingsCompiler.HEADER_SIZE || buffer.getInt(0) != TinyMappingsCompiler.MAGIC) {
+			throw new IOException("Not a binary mappings file");
+		}
+		if (buffer.getInt(4) != TinyMappingsCompiler.VERSION) {
+			throw new IOException("Unsupported binary mappings version " + buffer.getInt(4));
+		}
+
+		sourceHash = new byte[TinyMappingsCompiler.HASH_SIZE];
+		for (int i = 0; i < sourceHash.length; i++) {
+			sourceHash[i] = buffer.get(8 + i);
+		}
+
+		int position = 8 + TinyMappingsCompiler.HASH_SIZE;
+		int namespaceCount = buffer.getInt(position);
+		classCount = buffer.getInt(position + 4);
+		fieldCount = buffer.getInt(position + 8);
+		methodCount = buffer.getInt(position + 12);
+		stringOffsets = buffer.getInt(position + 16);
+		stringData = buffer.getInt(position + 20);
+		position += 24;
+
+		if (namespaceCount < 0 || classCount < 0 || fieldCount < 0 || methodCount < 0
+				|| stringOffsets < position + namespaceCount * (long) TinyMappingsCompiler.NAMESPACE_SIZE || stringData < stringOffsets + 4 || stringData > buffer.limit()
+				|| (stringData - stringOffsets) % 4 != 0) {
+			throw new IOException("Corrupt binary mappings header");
+		}
+
+		int stringCount = getStringCount();
+		strings = new AtomicReferenceArray<>(stringCount);
+		for (int id = 0, last = 0; id <= stringCount; id++) {
+			int offset = buffer.getInt(stringOffsets + id * 4);
+			if (offset < last || stringData + (long) offset > buffer.limit()) throw new IOException("Corrupt binary mappings string " + id);
+			last = offset;
+		}
+
+		long tableSize = (classCount + fieldCount * 3L + methodCount * 3L) * 4;
+		namespaceTables = new int[namespaceCount];
+		namespaceHashes = new byte[namespaceCount][];
+		String[] names = new String[namespaceCount];
+		for (int namespace = 0; namespace < namespaceCount; namespace++) {
+			int name = buffer.getInt(position);
+			int table = buffer.getInt(position + 4);
+			byte[] hash = new byte[TinyMappingsCompiler.HASH_SIZE];
+			for (int i = 0; i < hash.length; i++) {
+				hash[i] = buffer.get(position + 8 + i);
+			}
+			position += TinyMappingsCompiler.NAMESPACE_SIZE;
+
+			if (name < 0 || name >= stringCount || table < position || table + tableSize > stringOffsets) {
+				throw new IOException("Corrupt binary mappings namespace " + namespace);
+			}
+			for (long entry = table; entry < table + tableSize; entry += 4) {
+				int string = buffer.getInt((int) entry);
+				if (string < 0 || string >= stringCount) throw new IOException("Corrupt binary mappings namespace " + namespace);
+			}
+
+			names[namespace] = getString(name);
+			namespaceTables[namespace] = table;
+			namespaceHashes[namespace] = hash;
+		}
+		namespaces = Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	/**
+	 * Read the given binary mappings file into memory. The file isn't kept open (or mapped) afterwards, so it can be
+	 * replaced or deleted whilst the mappings are still in use.
+	 *
+	 * @param file The binary mappings to read
+	 *
+	 * @return The mappings in the file
+	 *
+	 * @throws IOException If the file can't be read or isn't valid binary mappings
+	 */
+	public static TinyMappings open(Path file) throws IOException {
+		return new TinyMappings(ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * @return The SHA-1 of the Tiny file these mappings were compiled from
+	 */
+	public byte[] getSourceHash() {
+		return sourceHash.clone();
+	}
+
+	/**
+	 * @return The size in bytes of the binary form of these mappings
+	 */
+	public int getSize() {
+		return buffer.limit();
+	}
+
+	/**
+	 * Estimate how much memory these mappings will take up once every string has been decoded, along with everything
+	 * {@link #getDerived(String, Function, ToLongFunction) derived} from them so far
+	 *
+	 * @return The estimated size in bytes
+	 */
+	public long getWeight() {
+		//Each String and its backing array cost roughly 40 bytes in headers on top of its (usually Latin-1) contents
+		return getSize() + strings.length() * (4L + 40L) + (buffer.limit() - stringData) + derivedWeight.get();
+	}
+
+	/**
+	 * Get something built from these mappings, building it if it hasn't been already. Whatever is built is kept for as
+	 * long as the mappings are, and counts towards their {@link #getWeight() weight}.
+	 *
+	 * @param key What is being built, unique to the builder
+	 * @param builder Builds the thing from these mappings, only called once per key
+	 * @param weigher Estimates the size in bytes of what was built
+	 *
+	 * @return What was built for the given key
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getDerived(String key, Function<TinyMappings, T> builder, ToLongFunction<T> weigher) {
+		return (T) derived.computeIfAbsent(key, k -> {
+			T built = builder.apply(this);
+			derivedWeight.addAndGet(weigher.applyAsLong(built));
+			return built;
+		});
+	}
+
+	/**
+	 * Hash only the names in the given namespaces, for things which don't depend on the others
+	 *
+	 * @param namespaces The namespaces to include
+	 *
+	 * @return The SHA-1 of every class, field and method in the given namespaces
+	 *
+	 * @throws IllegalArgumentException If the mappings don't have one of the given namespaces
+	 */
+	public byte[] hashNamespaces(String... namespaces) {
+		return hashNamespaces(this.namespaces, namespaceHashes, namespaces);
+	}
+
+	/**
+	 * Hash only the names in the given namespaces of the given binary mappings file, the same as
+	 * {@link #hashNamespaces(String...)} would, but without reading any more of the file than the header and the names
+	 * of the namespaces
+	 *
+	 * @param file The binary mappings to read
+	 * @param sourceHash The SHA-1 of the Tiny file the binary mappings are expected to have been compiled from
+	 * @param namespaces The namespaces to include
+	 *
+	 * @return The SHA-1 of every class, field and method in the given namespaces, or <code>null</code> if the file is
+	 * missing, isn't valid binary mappings, or was compiled from a different Tiny file
+	 *
+	 * @throws IllegalArgumentException If the mappings don't have one of the given namespaces
+	 */
+	public static byte[] hashNamespaces(Path file, byte[] sourceHash, String... namespaces) {
+		if (!Files.exists(file)) return null;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = read(channel, 0, TinyMappingsCompiler.HEADER_SIZE);
+			if (header.getInt(0) != TinyMappingsCompiler.MAGIC || header.getInt(4) != TinyMappingsCompiler.VERSION) return null;
+
+			for (int i = 0; i < TinyMappingsCompiler.HASH_SIZE; i++) {
+				if (header.get(8 + i) != sourceHash[i]) return null;
+			}
+
+			int position = 8 + TinyMappingsCompiler.HASH_SIZE;
+			int namespaceCount = header.getInt(position);
+			int stringOffsets = header.getInt(position + 16);
+			int stringData = header.getInt(position + 20);
+			if (namespaceCount < 0 || stringOffsets < TinyMappingsCompiler.HEADER_SIZE + namespaceCount * (long) TinyMappingsCompiler.NAMESPACE_SIZE
+					|| stringData < stringOffsets + 4 || stringData > channel.size() || (stringData - stringOffsets) % 4 != 0) {
+				return null;
+			}
+
+			int stringCount = (stringData - stringOffsets) / 4 - 1;
+			ByteBuffer entries = read(channel, TinyMappingsCompiler.HEADER_SIZE, namespaceCount * TinyMappingsCompiler.NAMESPACE_SIZE);
+			List<String> names = new ArrayList<>(namespaceCount);
+			byte[][] hashes = new byte[namespaceCount][];
+			for (int namespace = 0; namespace < namespaceCount; namespace++) {
+				int entry = namespace * TinyMappingsCompiler.NAMESPACE_SIZE;
+				int name = entries.getInt(entry);
+				if (name < 0 || name >= stringCount) return null;
+
+				ByteBuffer offsets = read(channel, stringOffsets + name * 4L, 8);
+				int start = offsets.getInt(0);
+				int end = offsets.getInt(4);
+				if (start < 0 || end < start || stringData + (long) end > channel.size()) return null;
+
+				names.add(new String(read(channel, stringData + (long) start, end - start).array(), StandardCharsets.UTF_8));
+				hashes[namespace] = Arrays.copyOfRange(entries.array(), entry + 8, entry + 8 + TinyMappingsCompiler.HASH_SIZE);
+			}
+
+			return hashNamespaces(names, hashes, namespaces);
+		} catch (IOException e) {
+			return null; //Whoever reads it properly will find out what's wrong
+		}
+	}
+
+	private static byte[] hashNamespaces(List<String> names, byte[][] hashes, String... namespaces) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform should support SHA-1", e);
+		}
+
+		for (String name : namespaces) {
+			int namespace = names.indexOf(name);
+			if (namespace < 0) throw new IllegalArgumentException("Unknown namespace " + name + ", expected one of " + names);
+
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(hashes[namespace]);
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Read exactly the given number of bytes from the given position in the given channel
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException("Binary mappings end early");
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	public List<String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Get the number of the given namespace, to pass into the other methods
+	 *
+	 * @param namespace The name of the namespace
+	 *
+	 * @return The number of the namespace
+	 *
+	 * @throws IllegalArgumentException If the mappings don't have the given namespace
+	 */
+	public int getNamespaceId(String namespace) {
+		int id = namespaces.indexOf(namespace);
+		if (id < 0) throw new IllegalArgumentException("Unknown namespace " + namespace + ", expected one of " + namespaces);
+		return id;
+	}
+
+	public int getClassCount() {
+		return classCount;
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	public int getMethodCount() {
+		return methodCount;
+	}
+
+	public String getClassName(int clazz, int namespace) {
+		return getString(getClassNameId(clazz, namespace));
+	}
+
+	public String getFieldOwner(int field, int namespace) {
+		return getString(getFieldId(field, namespace, 0));
+	}
+
+	public String getFieldName(int field, int namespace) {
+		return getString(getFieldId(field, namespace, 1));
+	}
+
+	public String getFieldDesc(int field, int namespace) {
+		return getString(getFieldId(field, namespace, 2));
+	}
+
+	public String getMethodOwner(int method, int namespace) {
+		return getString(getMethodId(method, namespace, 0));
+	}
+
+	public String getMethodName(int method, int namespace) {
+		return getString(getMethodId(method, namespace, 1));
+	}
+
+	public String getMethodDesc(int method, int namespace) {
+		return getString(getMethodId(method, namespace, 2));
+	}
+
+	int getClassNameId(int clazz, int namespace) {
+		return buffer.getInt(namespaceTables[namespace] + checkIndex(clazz, classCount) * 4);
+	}
+
+	int getFieldId(int field, int namespace, int part) {
+		return buffer.getInt(namespaceTables[namespace] + (classCount + checkIndex(field, fieldCount) * 3 + part) * 4);
+	}
+
+	int getMethodId(int method, int namespace, int part) {
+		return buffer.getInt(namespaceTables[namespace] + (classCount + fieldCount * 3 + checkIndex(method, methodCount) * 3 + part) * 4);
+	}
+
+	private static int checkIndex(int index, int count) {
+		if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index " + index + " out of " + count);
+		return index;
+	}
+
+	int getStringCount() {
+		return (stringData - stringOffsets) / 4 - 1;
+	}
+
+	String getString(int id) {
+		String string = strings.get(id);
+
+		if (string == null) {
+			//Racing threads might both decode the same string, but only the first to finish has theirs kept and returned
+			string = decode(id);
+			if (!strings.compareAndSet(id, null, string)) string = strings.get(id);
+		}
+
+		return string;
+	}
+
+	private String decode(int id) {
+		int start = buffer.getInt(stringOffsets + id * 4);
+		int end = buffer.getInt(stringOffsets + id * 4 + 4);
+		int length = end - start;
+
+		byte[] bytes = new byte[length];
+		for (int i = 0, offset = stringData + start; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
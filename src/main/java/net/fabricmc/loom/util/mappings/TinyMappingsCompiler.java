@@ -0,0 +1,361 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.mappings;
+
+import net.fabricmc.loom.util.FileHashCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns Tiny (v1) mappings into a binary form which can be read by {@link TinyMappings} without parsing anything.
+ *
+ * <p>The binary form is laid out as follows, with every number being a big endian <code>int</code>:
+ * <pre>
+ * magic ("LMAP"), version
+ * SHA-1 of the Tiny file (20 bytes)
+ * namespace count, class count, field count, method count
+ * string offsets position, string data position
+ * for each namespace: name string, namespace table position, SHA-1 of the names in the namespace table (20 bytes)
+ * for each namespace table:
+ *     the name string of each class
+ *     the owner, name and descriptor strings of each field
+ *     the owner, name and descriptor strings of each method
+ * string offsets: the start of each string in the string data, followed by the end of the last
+ * string data: every distinct string once, UTF-8 encoded
+ * </pre>
+ * Owners and descriptors are given in every namespace, rather than only the first as in the Tiny file, so reading
+ * a member in any namespace never needs remapping. As each distinct string is only kept once, repeating them costs
+ * no more than the four bytes to refer to them.
+ */
+public final class TinyMappingsCompiler {
+	static final int MAGIC = 0x4C4D4150; //LMAP
+	static final int VERSION = 2;
+	static final int HASH_SIZE = 20;
+	static final int HEADER_SIZE = 8 + HASH_SIZE + 24;
+	static final int NAMESPACE_SIZE = 8 + HASH_SIZE;
+
+	private TinyMappingsCompiler() {
+	}
+
+	/**
+	 * Load the given Tiny mappings through the given binary form, compiling it first if it is missing or out of date
+	 *
+	 * @param tiny The Tiny mappings file
+	 * @param binary Where to keep the binary form of the mappings
+	 *
+	 * @return The mappings, read from the binary form
+	 *
+	 * @throws IOException If an exception occurs reading the Tiny file or writing the binary form
+	 */
+	public static TinyMappings load(Path tiny, Path binary) throws IOException {
+		byte[] hash = FileHashCache.INSTANCE.sha1(tiny.toFile());
+
+		if (Files.exists(binary)) {
+			try {
+				TinyMappings mappings = TinyMappings.open(binary);
+				if (Arrays.equals(hash, mappings.getSourceHash())) return mappings;
+			} catch (IOException | RuntimeException e) {
+				//Probably from an older version or corrupt, either way it can be compiled again
+			}
+		}
+
+		ByteBuffer compiled = compile(tiny);
+		TinyMappings mappings = new TinyMappings(compiled.duplicate());
+		Path temp = Files.createTempFile(binary.toAbsolutePath().getParent(), binary.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (compiled.hasRemaining()) channel.write(compiled);
+			}
+
+			try {
+				Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		return mappings;
+	}
+
+	/**
+	 * Read the given Tiny mappings into memory without keeping the binary form anywhere
+	 *
+	 * @param tiny The Tiny mappings file
+	 *
+	 * @return The mappings
+	 *
+	 * @throws IOException If an exception occurs reading the Tiny file
+	 */
+	public static TinyMappings read(Path tiny) throws IOException {
+		return new TinyMappings(compile(tiny));
+	}
+
+	/**
+	 * Read the given Tiny mappings into their binary form
+	 *
+	 * @param tiny The Tiny mappings file
+	 *
+	 * @return A buffer holding the binary form, ready to be read
+	 *
+	 * @throws IOException If an exception occurs reading the Tiny file, or it isn't in the expected format
+	 */
+	static ByteBuffer compile(Path tiny) throws IOException {
+		MessageDigest digest = sha1Digest();
+
+		String[] namespaces;
+		List<String[]> classes = new ArrayList<>();
+		List<String[]> fields = new ArrayList<>();
+		List<String[]> methods = new ArrayList<>();
+
+		try (InputStream in = new DigestInputStream(Files.newInputStream(tiny), digest);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith("v1\t")) {
+				throw new IOException("Expected Tiny v1 mappings in " + tiny + ", found " + header);
+			}
+			namespaces = header.substring(3).split("\t");
+
+			String line;
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#")) continue;
+
+				String[] parts = line.split("\t", -1);
+				switch (parts[0]) {
+				case "CLASS":
+					classes.add(fill(parts, 1, namespaces.length, tiny, lineNumber));
+					break;
+
+				case "FIELD":
+					fields.add(fill(parts, 3, namespaces.length, tiny, lineNumber));
+					break;
+
+				case "METHOD":
+					methods.add(fill(parts, 3, namespaces.length, tiny, lineNumber));
+					break;
+
+				default:
+					//Something newer than we know about, but it won't be needed to remap with
+				}
+			}
+
+			//Make sure the hash covers everything, even if there's something after the last line
+			byte[] skip = new byte[8192];
+			while (in.read(skip) >= 0);
+		}
+
+		//Owners and descriptors are only given in the first namespace, so they need remapping into the others
+		List<Map<String, String>> classMaps = new ArrayList<>(namespaces.length);
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			Map<String, String> classMap = new HashMap<>(classes.size() * 2);
+
+			for (String[] clazz : classes) {
+				classMap.put(clazz[1], clazz[1 + namespace]);
+			}
+
+			classMaps.add(classMap);
+		}
+
+		StringPool pool = new StringPool();
+		int[] namespaceNames = new int[namespaces.length];
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			namespaceNames[namespace] = pool.add(namespaces[namespace]);
+		}
+
+		int tableSize = classes.size() + fields.size() * 3 + methods.size() * 3;
+		int[][] tables = new int[namespaces.length][tableSize];
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			Map<String, String> classMap = classMaps.get(namespace);
+			int[] table = tables[namespace];
+			int index = 0;
+
+			for (String[] clazz : classes) {
+				table[index++] = pool.add(clazz[1 + namespace]);
+			}
+
+			for (List<String[]> members : Arrays.asList(fields, methods)) {
+				for (String[] member : members) {
+					table[index++] = pool.add(classMap.getOrDefault(member[1], member[1]));
+					table[index++] = pool.add(member[3 + namespace]);
+					table[index++] = pool.add(remapDesc(member[2], classMap));
+				}
+			}
+		}
+
+		//Hashed now so anything which only depends on some of the namespaces can tell if they've changed without reading the tables
+		byte[][] tableHashes = new byte[namespaces.length][];
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			MessageDigest tableDigest = sha1Digest();
+
+			for (int id : tables[namespace]) {
+				tableDigest.update(pool.get(id));
+				tableDigest.update((byte) 0); //Can't appear in a name, so marks where each ends
+			}
+
+			tableHashes[namespace] = tableDigest.digest();
+		}
+
+		int position = HEADER_SIZE + namespaces.length * NAMESPACE_SIZE;
+		int[] tablePositions = new int[namespaces.length];
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			tablePositions[namespace] = position;
+			position += tableSize * 4;
+		}
+		int stringOffsets = position;
+		int stringData = stringOffsets + (pool.size() + 1) * 4;
+
+		ByteBuffer buffer = ByteBuffer.allocate(stringData + pool.dataSize());
+		buffer.putInt(MAGIC).putInt(VERSION).put(digest.digest());
+		buffer.putInt(namespaces.length).putInt(classes.size()).putInt(fields.size()).putInt(methods.size());
+		buffer.putInt(stringOffsets).putInt(stringData);
+
+		for (int namespace = 0; namespace < namespaces.length; namespace++) {
+			buffer.putInt(namespaceNames[namespace]).putInt(tablePositions[namespace]).put(tableHashes[namespace]);
+		}
+
+		for (int[] table : tables) {
+			for (int id : table) {
+				buffer.putInt(id);
+			}
+		}
+
+		pool.write(buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static MessageDigest sha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform should support SHA-1", e);
+		}
+	}
+
+	/**
+	 * Make sure the given line has a name for every namespace, using the first namespace's name for any which are missing
+	 */
+	private static String[] fill(String[] parts, int firstName, int namespaces, Path tiny, int lineNumber) throws IOException {
+		if (parts.length <= firstName) {
+			throw new IOException("Invalid " + parts[0] + " line " + lineNumber + " in " + tiny);
+		}
+
+		String[] out = parts.length >= firstName + namespaces ? parts : Arrays.copyOf(parts, firstName + namespaces);
+		for (int i = firstName + 1; i < out.length; i++) {
+			if (out[i] == null || out[i].isEmpty()) out[i] = out[firstName];
+		}
+
+		return out;
+	}
+
+	/**
+	 * Remap every class named in the given descriptor using the given class map
+	 */
+	static String remapDesc(String desc, Map<String, String> classMap) {
+		int start = desc.indexOf('L');
+		if (start < 0) return desc; //No classes to remap
+
+		StringBuilder out = new StringBuilder(desc.length() + 16);
+		int last = 0;
+		do {
+			int end = desc.indexOf(';', start);
+			if (end < 0) break; //Shouldn't happen, but if it does there's nothing more to be done
+
+			String name = desc.substring(start + 1, end);
+			out.append(desc, last, start + 1).append(classMap.getOrDefault(name, name));
+			last = end;
+			start = desc.indexOf('L', end);
+		} while (start >= 0);
+
+		return out.append(desc, last, desc.length()).toString();
+	}
+
+	private static class StringPool {
+		private final Map<String, Integer> ids = new HashMap<>();
+		private final List<byte[]> strings = new ArrayList<>();
+		private int dataSize;
+
+		int add(String string) {
+			Integer id = ids.get(string);
+
+			if (id == null) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				id = strings.size();
+				ids.put(string, id);
+				strings.add(bytes);
+				dataSize += bytes.length;
+			}
+
+			return id;
+		}
+
+		byte[] get(int id) {
+			return strings.get(id);
+		}
+
+		int size() {
+			return strings.size();
+		}
+
+		int dataSize() {
+			return dataSize;
+		}
+
+		void write(ByteBuffer buffer) {
+			int offset = 0;
+			for (byte[] string : strings) {
+				buffer.putInt(offset);
+				offset += string.length;
+			}
+			buffer.putInt(offset);
+
+			for (byte[] string : strings) {
+				buffer.put(string);
+			}
+		}
+	}
+}
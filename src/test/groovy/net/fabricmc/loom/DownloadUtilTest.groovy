@@ -0,0 +1,296 @@
+package net.fabricmc.loom
+
+import com.google.common.hash.Hashing
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import net.fabricmc.loom.util.DownloadUtil
+import org.gradle.api.logging.Logging
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+
+class DownloadUtilTest extends Specification {
+	@Rule
+	TemporaryFolder tempDir = new TemporaryFolder()
+	HttpServer server
+	byte[] content = new byte[256 * 1024]
+	String etag = '"loom-test"'
+	List<String> ranges = []
+
+	def setup() {
+		new Random(42).nextBytes(content)
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+		server.createContext("/client.jar") { HttpExchange exchange ->
+			String range = exchange.requestHeaders.getFirst("Range")
+			ranges << range
+			exchange.responseHeaders.add("ETag", etag)
+			exchange.responseHeaders.add("Accept-Ranges", "bytes")
+
+			if (range != null && exchange.requestHeaders.getFirst("If-Range") == etag) {
+				int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1))
+				exchange.responseHeaders.add("Content-Range", "bytes $start-${content.length - 1}/${content.length}")
+				exchange.sendResponseHeaders(206, content.length - start)
+				exchange.responseBody.write(content, start, content.length - start)
+			} else {
+				exchange.sendResponseHeaders(200, content.length)
+				exchange.responseBody.write(content)
+			}
+
+			exchange.close()
+		}
+		server.createContext("/unsatisfiable.jar") { HttpExchange exchange ->
+			String range = exchange.requestHeaders.getFirst("Range")
+			ranges << range
+
+			if (range != null) {
+				exchange.responseHeaders.add("Content-Range", "bytes */${content.length}")
+				exchange.sendResponseHeaders(416, -1)
+			} else {
+				exchange.sendResponseHeaders(200, content.length)
+				exchange.responseBody.write(content)
+			}
+
+			exchange.close()
+		}
+		server.createContext("/index.json") { HttpExchange exchange ->
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+			new GZIPOutputStream(compressed).withStream { it.write(content) }
+
+			exchange.responseHeaders.add("Content-Encoding", "gzip")
+			exchange.sendResponseHeaders(200, compressed.size())
+			exchange.responseBody.write(compressed.toByteArray())
+			exchange.close()
+		}
+		server.createContext("/deflate.json") { HttpExchange exchange ->
+			sendDeflated(exchange, new Deflater())
+		}
+		server.createContext("/raw-deflate.json") { HttpExchange exchange ->
+			//Some servers leave off the zlib wrapper
+			sendDeflated(exchange, new Deflater(Deflater.DEFAULT_COMPRESSION, true))
+		}
+		server.start()
+	}
+
+	def cleanup() {
+		server.stop(0)
+	}
+
+	def "interrupted downloads are resumed with a range request"() {
+		given:
+		File target = new File(tempDir.root, "client.jar")
+		new File(tempDir.root, "client.jar.part").bytes = Arrays.copyOf(content, 100_000)
+		new File(tempDir.root, "client.jar.part.etag").text = etag
+
+		when:
+		DownloadUtil.downloadVerified(url(), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		ranges == ["bytes=100000-"]
+		target.bytes == content
+		!new File(tempDir.root, "client.jar.part").exists()
+	}
+
+	def "partial downloads are restarted if the file has changed"() {
+		given:
+		File target = new File(tempDir.root, "client.jar")
+		new File(tempDir.root, "client.jar.part").bytes = new byte[100_000]
+		new File(tempDir.root, "client.jar.part.etag").text = '"something-else"'
+
+		when:
+		DownloadUtil.downloadVerified(url(), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+	}
+
+	def "partial downloads are restarted if the range can't be satisfied"() {
+		given:
+		File target = new File(tempDir.root, "unsatisfiable.jar")
+		new File(tempDir.root, "unsatisfiable.jar.part").bytes = new byte[100_000]
+		new File(tempDir.root, "unsatisfiable.jar.part.etag").text = etag
+
+		when:
+		DownloadUtil.downloadVerified(url("unsatisfiable.jar"), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		ranges == ["bytes=100000-", null]
+		target.bytes == content
+		!new File(tempDir.root, "unsatisfiable.jar.part").exists()
+		!new File(tempDir.root, "unsatisfiable.jar.part.etag").exists()
+	}
+
+	def "downloads which don't match their hash are never published"() {
+		given:
+		File target = new File(tempDir.root, "client.jar")
+
+		when:
+		DownloadUtil.downloadVerified(url(), target, "0" * 40, content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		thrown(IOException)
+		!target.exists()
+		!new File(tempDir.root, "client.jar.part").exists()
+	}
+
+	def "compressed downloads are saved decompressed"() {
+		given:
+		File target = new File(tempDir.root, "index.json")
+
+		when:
+		DownloadUtil.downloadVerified(url("index.json"), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+	}
+
+	def "deflated downloads are saved inflated"() {
+		given:
+		File target = new File(tempDir.root, file)
+
+		when:
+		DownloadUtil.downloadVerified(url(file), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+
+		where:
+		file << ["deflate.json", "raw-deflate.json"]
+	}
+
+	def "files are copied from mirrors on disk"() {
+		given:
+		File mirrored = new File(tempDir.newFolder("mirror"), "client.jar")
+		mirrored.bytes = content
+		File target = new File(tempDir.root, "client.jar")
+
+		when:
+		DownloadUtil.downloadVerified(mirrored.toURI().toURL(), target, sha1(), content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+		target.lastModified() == mirrored.lastModified()
+		!new File(tempDir.root, "client.jar.part").exists()
+	}
+
+	def "files from mirrors which don't match their hash are never published"() {
+		given:
+		File mirrored = new File(tempDir.newFolder("mirror"), "client.jar")
+		mirrored.bytes = content
+		File target = new File(tempDir.root, "client.jar")
+
+		when:
+		DownloadUtil.downloadVerified(mirrored.toURI().toURL(), target, "0" * 40, content.length, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		thrown(IOException)
+		!target.exists()
+		!new File(tempDir.root, "client.jar.part").exists()
+	}
+
+	def "files missing from mirrors aren't made up"() {
+		given:
+		File target = new File(tempDir.root, "version.json")
+
+		when:
+		DownloadUtil.downloadIfChanged(new File(tempDir.newFolder("mirror"), "version.json").toURI().toURL(), target, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		thrown(FileNotFoundException)
+		!target.exists()
+	}
+
+	def "unchanged files in mirrors are only copied once"() {
+		given:
+		File mirrored = new File(tempDir.newFolder("mirror"), "version.json")
+		mirrored.bytes = content
+		File target = new File(tempDir.root, "version.json")
+		DownloadUtil.downloadIfChanged(mirrored.toURI().toURL(), target, Logging.getLogger(DownloadUtilTest), true)
+		target.bytes = new byte[content.length] //Same size and modify time as the mirror, so should be left alone
+		target.lastModified = mirrored.lastModified()
+
+		when:
+		DownloadUtil.downloadIfChanged(mirrored.toURI().toURL(), target, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == new byte[content.length]
+
+		when:
+		mirrored.lastModified = mirrored.lastModified() - 60_000
+		DownloadUtil.downloadIfChanged(mirrored.toURI().toURL(), target, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+	}
+
+	def "downloads stay fresh until their check expires"() {
+		given:
+		File target = new File(tempDir.root, "version.json")
+
+		when:
+		DownloadUtil.downloadIfChanged(url(), target, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		DownloadUtil.isFresh(target, 60_000)
+		!DownloadUtil.isFresh(target, 0)
+
+		when:
+		new File(tempDir.root, "version.json.checked").text = Long.toString(System.currentTimeMillis() - 120_000)
+
+		then:
+		!DownloadUtil.isFresh(target, 60_000)
+		DownloadUtil.isFresh(target, 180_000)
+	}
+
+	def "checking a download again refreshes it"() {
+		given:
+		File target = new File(tempDir.root, "version.json")
+		DownloadUtil.downloadIfChanged(url(), target, Logging.getLogger(DownloadUtilTest), true)
+		new File(tempDir.root, "version.json.checked").text = Long.toString(System.currentTimeMillis() - 120_000)
+
+		when:
+		DownloadUtil.downloadIfChanged(url(), target, Logging.getLogger(DownloadUtilTest), true)
+
+		then:
+		target.bytes == content
+		DownloadUtil.isFresh(target, 60_000)
+	}
+
+	def "files which were never checked, or whose check can't be trusted, aren't fresh"() {
+		given:
+		File target = new File(tempDir.root, "version.json")
+		target.bytes = content
+
+		when:
+		if (checked != null) new File(tempDir.root, "version.json.checked").text = checked
+
+		then:
+		!DownloadUtil.isFresh(target, 60_000)
+
+		where:
+		checked << [null, Long.toString(System.currentTimeMillis() + 120_000), "not a time"]
+	}
+
+	private void sendDeflated(HttpExchange exchange, Deflater deflater) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+		new DeflaterOutputStream(compressed, deflater).withStream { it.write(content) }
+		deflater.end()
+
+		exchange.responseHeaders.add("Content-Encoding", "deflate")
+		exchange.sendResponseHeaders(200, compressed.size())
+		exchange.responseBody.write(compressed.toByteArray())
+		exchange.close()
+	}
+
+	private URL url(String file = "client.jar") {
+		new URL("http://127.0.0.1:${server.address.port}/$file")
+	}
+
+	private String sha1() {
+		Hashing.sha1().hashBytes(content).toString()
+	}
+}
@@ -0,0 +1,175 @@
+package net.fabricmc.loom.util
+
+import net.fabricmc.loom.util.mappings.TinyMappings
+import net.fabricmc.loom.util.mappings.TinyMappingsCompiler
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import spock.lang.Specification
+
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+import static org.objectweb.asm.Opcodes.*
+
+class MapJarsIncrementalTest extends Specification {
+	@Rule
+	TemporaryFolder tempDir = new TemporaryFolder()
+	Path intermediaryJar
+
+	def setup() {
+		//class_1 declares field_1 and method_1, its anonymous inner class reads field_1 and class_2 calls method_1
+		intermediaryJar = jar("intermediary.jar", [
+				'net/minecraft/class_1': clazz('net/minecraft/class_1') { ClassWriter writer ->
+					writer.visitField(ACC_PUBLIC | ACC_STATIC, "field_1", "I", null, null).visitEnd()
+					method(writer, "method_1") {}
+				},
+				'net/minecraft/class_1$1': clazz('net/minecraft/class_1$1') { ClassWriter writer ->
+					method(writer, "run") { MethodVisitor method ->
+						method.visitFieldInsn(GETSTATIC, "net/minecraft/class_1", "field_1", "I")
+						method.visitInsn(POP)
+					}
+				},
+				'net/minecraft/class_2': clazz('net/minecraft/class_2') { ClassWriter writer ->
+					method(writer, "run") { MethodVisitor method ->
+						method.visitMethodInsn(INVOKESTATIC, "net/minecraft/class_1", "method_1", "()V", false)
+					}
+				},
+				'net/minecraft/class_3': clazz('net/minecraft/class_3') {}
+		])
+	}
+
+	def "renaming a class affects it, its inner classes and everything referencing it"() {
+		given:
+		def changes = new MapJarsIncremental.Changes(mappings(), mappings(foo: "net/minecraft/Qux"))
+
+		when:
+		def result = split(changes)
+
+		then:
+		result.skip == ['net/minecraft/Foo.class', 'net/minecraft/Foo$1.class', 'net/minecraft/Bar.class'] as Set
+		result.dirty == ['net/minecraft/class_1.class', 'net/minecraft/class_1$1.class', 'net/minecraft/class_2.class'] as Set
+		result.clean == ['net/minecraft/class_3.class'] as Set
+		result.total == 4
+	}
+
+	def "renaming a method affects the classes which call it"() {
+		given:
+		def changes = new MapJarsIncremental.Changes(mappings(), mappings(method: "update"))
+
+		when:
+		def result = split(changes)
+
+		then:
+		result.skip == ['net/minecraft/Foo.class', 'net/minecraft/Bar.class'] as Set
+		result.clean == ['net/minecraft/class_1$1.class', 'net/minecraft/class_3.class'] as Set
+	}
+
+	def "renaming a field affects the inner classes which read it"() {
+		given:
+		def changes = new MapJarsIncremental.Changes(mappings(), mappings(field: "count"))
+
+		when:
+		def result = split(changes)
+
+		then:
+		result.skip == ['net/minecraft/Foo.class', 'net/minecraft/Foo$1.class'] as Set
+		result.clean == ['net/minecraft/class_2.class', 'net/minecraft/class_3.class'] as Set
+	}
+
+	def "unchanged mappings leave every class as it was"() {
+		given:
+		def changes = new MapJarsIncremental.Changes(mappings(), mappings())
+
+		when:
+		def result = split(changes)
+
+		then:
+		result.skip.isEmpty()
+		result.dirty.isEmpty()
+		result.total == 4
+	}
+
+	def "classes which weren't remapped again are copied straight from the old mapped jar"() {
+		given:
+		byte[] bar = clazz('net/minecraft/Bar') {}
+		byte[] baz = clazz('net/minecraft/Baz') {}
+		Path previous = jar("previous.jar", ['net/minecraft/Bar': bar, 'net/minecraft/Baz': baz], ['assets/lang.json': "{}".bytes])
+		byte[] remappedBar = clazz('net/minecraft/Bar') { ClassWriter writer -> method(writer, "run") {} }
+		Path remapped = jar("remapped.jar", ['net/minecraft/Bar': remappedBar])
+		Path output = tempDir.root.toPath().resolve("output.jar")
+
+		when:
+		MapJarsIncremental.merge(remapped, previous, ['net/minecraft/Bar.class'] as Set, output)
+
+		then:
+		def contents = read(output)
+		contents.keySet() == ['net/minecraft/Bar.class', 'net/minecraft/Baz.class', 'assets/lang.json'] as Set
+		contents['net/minecraft/Bar.class'] == remappedBar
+		contents['net/minecraft/Baz.class'] == baz
+		contents['assets/lang.json'] == "{}".bytes
+	}
+
+	private Map split(MapJarsIncremental.Changes changes) {
+		Path dirty = tempDir.root.toPath().resolve("dirty.jar")
+		Path clean = tempDir.root.toPath().resolve("clean.jar")
+		Set<String> skip = new HashSet<>()
+
+		int total = MapJarsIncremental.splitClasses(intermediaryJar, changes, dirty, clean, skip)
+		[skip: skip, dirty: read(dirty).keySet(), clean: read(clean).keySet(), total: total]
+	}
+
+	private TinyMappings mappings(Map names = [:]) {
+		File tiny = tempDir.newFile()
+		tiny.text = [
+				"v1\tofficial\tintermediary\tnamed",
+				"CLASS\ta\tnet/minecraft/class_1\t${names.foo ?: 'net/minecraft/Foo'}",
+				"CLASS\tb\tnet/minecraft/class_2\tnet/minecraft/Bar",
+				"CLASS\tc\tnet/minecraft/class_3\tnet/minecraft/Baz",
+				"FIELD\ta\tI\td\tfield_1\t${names.field ?: 'value'}",
+				"METHOD\ta\t()V\te\tmethod_1\t${names.method ?: 'tick'}"
+		].join("\n") + "\n"
+
+		TinyMappingsCompiler.read(tiny.toPath())
+	}
+
+	private static byte[] clazz(String name, Closure body) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+		writer.visit(V1_6, ACC_PUBLIC, name, null, "java/lang/Object", null)
+		body(writer)
+		writer.visitEnd()
+		writer.toByteArray()
+	}
+
+	private static void method(ClassWriter writer, String name, Closure body) {
+		MethodVisitor method = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, name, "()V", null, null)
+		method.visitCode()
+		body(method)
+		method.visitInsn(RETURN)
+		method.visitMaxs(0, 0)
+		method.visitEnd()
+	}
+
+	private Path jar(String name, Map<String, byte[]> classes, Map<String, byte[]> resources = [:]) {
+		File jar = new File(tempDir.root, name)
+
+		new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+			(classes.collectEntries { [(it.key + ".class"): it.value] } + resources).each { String entry, byte[] bytes ->
+				out.putNextEntry(new ZipEntry(entry))
+				out.write(bytes)
+				out.closeEntry()
+			}
+		}
+
+		jar.toPath()
+	}
+
+	private static Map<String, byte[]> read(Path jar) {
+		new ZipFile(jar.toFile()).withCloseable { ZipFile zip ->
+			zip.entries().collectEntries { ZipEntry entry -> [(entry.name): zip.getInputStream(entry).bytes] }
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package net.fabricmc.loom.util.mappings
+
+import com.google.common.hash.Hashing
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class TinyMappingsCompilerTest extends Specification {
+	@Rule
+	TemporaryFolder tempDir = new TemporaryFolder()
+	Path tiny
+
+	def setup() {
+		tiny = tiny("""\
+			v1	official	intermediary	named
+			CLASS	a	net/minecraft/class_1	net/minecraft/Foo
+			CLASS	b	net/minecraft/class_2
+			FIELD	a	La;	c	field_1	parent
+			METHOD	a	(La;[Lb;I)Ljava/lang/String;	d	method_1
+			""")
+	}
+
+	def "descriptors are remapped class by class"() {
+		expect:
+		TinyMappingsCompiler.remapDesc(desc, [a: "net/minecraft/class_1", b: "net/minecraft/class_2"]) == remapped
+
+		where:
+		desc                           | remapped
+		"I"                            | "I"
+		"La;"                          | "Lnet/minecraft/class_1;"
+		"(La;[[Lb;J)V"                 | "(Lnet/minecraft/class_1;[[Lnet/minecraft/class_2;J)V"
+		"(Ljava/lang/Object;)La;"      | "(Ljava/lang/Object;)Lnet/minecraft/class_1;"
+	}
+
+	def "owners and descriptors are given in every namespace"() {
+		when:
+		TinyMappings mappings = TinyMappingsCompiler.read(tiny)
+		int intermediary = mappings.getNamespaceId("intermediary")
+		int named = mappings.getNamespaceId("named")
+
+		then:
+		mappings.getFieldOwner(0, intermediary) == "net/minecraft/class_1"
+		mappings.getFieldDesc(0, intermediary) == "Lnet/minecraft/class_1;"
+		mappings.getFieldOwner(0, named) == "net/minecraft/Foo"
+		mappings.getFieldDesc(0, named) == "Lnet/minecraft/Foo;"
+		mappings.getMethodOwner(0, intermediary) == "net/minecraft/class_1"
+		mappings.getMethodDesc(0, intermediary) == "(Lnet/minecraft/class_1;[Lnet/minecraft/class_2;I)Ljava/lang/String;"
+	}
+
+	def "missing names are filled in from the first namespace"() {
+		when:
+		TinyMappings mappings = TinyMappingsCompiler.read(tiny)
+		int named = mappings.getNamespaceId("named")
+
+		then:
+		mappings.getClassName(1, named) == "b"
+		mappings.getMethodName(0, named) == "d"
+		mappings.getMethodDesc(0, named) == "(Lnet/minecraft/Foo;[Lb;I)Ljava/lang/String;"
+		mappings.getFieldName(0, named) == "parent"
+	}
+
+	def "binary mappings read back the same as they were compiled"() {
+		given:
+		Path binary = tempDir.root.toPath().resolve("mappings.bin")
+
+		when:
+		TinyMappings compiled = TinyMappingsCompiler.load(tiny, binary)
+		TinyMappings read = TinyMappings.open(binary)
+
+		then:
+		Files.exists(binary)
+		read.sourceHash == Hashing.sha1().hashBytes(tiny.bytes).asBytes()
+		read.namespaces == ["official", "intermediary", "named"]
+		names(read) == names(compiled)
+		names(read) == names(TinyMappingsCompiler.read(tiny))
+	}
+
+	def "binary mappings are compiled again when the Tiny file changes"() {
+		given:
+		Path binary = tempDir.root.toPath().resolve("mappings.bin")
+		TinyMappingsCompiler.load(tiny, binary)
+		tiny.text = tiny.text.replace("net/minecraft/Foo", "net/minecraft/Renamed")
+
+		when:
+		TinyMappings mappings = TinyMappingsCompiler.load(tiny, binary)
+
+		then:
+		mappings.getClassName(0, mappings.getNamespaceId("named")) == "net/minecraft/Renamed"
+		TinyMappings.open(binary).getClassName(0, mappings.getNamespaceId("named")) == "net/minecraft/Renamed"
+		TinyMappings.open(binary).sourceHash == Hashing.sha1().hashBytes(tiny.bytes).asBytes()
+	}
+
+	def "truncated binary mappings are rejected"() {
+		given:
+		Path binary = tempDir.root.toPath().resolve("mappings.bin")
+		TinyMappingsCompiler.load(tiny, binary)
+		byte[] full = binary.bytes
+		binary.bytes = Arrays.copyOf(full, length(full.length))
+
+		when:
+		TinyMappings.open(binary)
+
+		then:
+		thrown(IOException)
+
+		where:
+		length << [{ 10 }, { TinyMappingsCompiler.HEADER_SIZE }, { it.intdiv(2) }, { it - 1 }]
+	}
+
+	def "truncated binary mappings are compiled again"() {
+		given:
+		Path binary = tempDir.root.toPath().resolve("mappings.bin")
+		TinyMappingsCompiler.load(tiny, binary)
+		byte[] full = binary.bytes
+		binary.bytes = Arrays.copyOf(full, full.length - 1)
+
+		when:
+		TinyMappings mappings = TinyMappingsCompiler.load(tiny, binary)
+
+		then:
+		names(mappings) == names(TinyMappingsCompiler.read(tiny))
+		binary.bytes == full
+	}
+
+	def "namespaces can be hashed from the header of the binary mappings alone"() {
+		given:
+		Path binary = tempDir.root.toPath().resolve("mappings.bin")
+		TinyMappings mappings = TinyMappingsCompiler.load(tiny, binary)
+		byte[] sourceHash = Hashing.sha1().hashBytes(tiny.bytes).asBytes()
+
+		expect:
+		TinyMappings.hashNamespaces(binary, sourceHash, "official", "intermediary") == mappings.hashNamespaces("official", "intermediary")
+		TinyMappings.hashNamespaces(binary, sourceHash, "named") == mappings.hashNamespaces("named")
+		TinyMappings.hashNamespaces(binary, new byte[20], "official") == null
+		TinyMappings.hashNamespaces(tempDir.root.toPath().resolve("missing.bin"), sourceHash, "official") == null
+	}
+
+	def "namespace hashes only change with the names in them"() {
+		given:
+		TinyMappings before = TinyMappingsCompiler.read(tiny)
+		tiny.text = tiny.text.replace("net/minecraft/Foo", "net/minecraft/Renamed")
+
+		when:
+		TinyMappings after = TinyMappingsCompiler.read(tiny)
+
+		then:
+		after.hashNamespaces("official", "intermediary") == before.hashNamespaces("official", "intermediary")
+		after.hashNamespaces("named") != before.hashNamespaces("named")
+		after.hashNamespaces("intermediary", "official") != after.hashNamespaces("official", "intermediary")
+	}
+
+	private Path tiny(String text) {
+		Path file = tempDir.newFile("mappings.tiny").toPath()
+		file.text = text.stripIndent()
+		file
+	}
+
+	private static List<String> names(TinyMappings mappings) {
+		List<String> names = []
+
+		for (int namespace = 0; namespace < mappings.namespaces.size(); namespace++) {
+			for (int i = 0; i < mappings.classCount; i++) {
+				names << mappings.getClassName(i, namespace)
+			}
+
+			for (int i = 0; i < mappings.fieldCount; i++) {
+				names << mappings.getFieldOwner(i, namespace) << mappings.getFieldName(i, namespace) << mappings.getFieldDesc(i, namespace)
+			}
+
+			for (int i = 0; i < mappings.methodCount; i++) {
+				names << mappings.getMethodOwner(i, namespace) << mappings.getMethodName(i, namespace) << mappings.getMethodDesc(i, namespace)
+			}
+		}
+
+		names
+	}
+}